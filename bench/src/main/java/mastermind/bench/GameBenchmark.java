@@ -0,0 +1,83 @@
+package mastermind.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import mastermind.stdio.StdioRouter;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Creates answers and hints of the game itself, for standard (6 colors) and challenge (7 colors) mode.
+ *
+ * The game classes are in the default package, which benchmarks cannot refer to; they are called through method
+ * handles, which the JIT compiler inlines as they are constants. Hints are printed to a stream that discards them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+    private static final MethodHandle NEW_ANSWER, GET_ANSWER, NEW_HINT, GET_HINT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> answer = Class.forName("MMAnswer");
+            Class<?> hint = Class.forName("MMHint");
+            NEW_ANSWER = lookup.findConstructor(answer, MethodType.methodType(void.class, int.class));
+            GET_ANSWER = lookup.findVirtual(answer, "getAnswer", MethodType.methodType(char[].class));
+            NEW_HINT = lookup.findConstructor(hint, MethodType.methodType(void.class, char[].class, int.class));
+            GET_HINT = lookup.findVirtual(hint, "getHint", MethodType.methodType(int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"6", "7"})
+    public int mode;
+
+    private char[] answer;
+
+    @Setup
+    public void setUp() throws Throwable {
+        StdioRouter.install();
+        StdioRouter.bind(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }), StdioRouter.getRealIn());
+
+        answer = newAnswer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        StdioRouter.unbind();
+    }
+
+    @Benchmark
+    public char[] newAnswer() throws Throwable {
+        return (char[]) GET_ANSWER.invoke(NEW_ANSWER.invoke(mode));
+    }
+
+    @Benchmark
+    public int firstHint() throws Throwable {
+        return (int) GET_HINT.invoke(NEW_HINT.invoke(answer, 0));
+    }
+
+    @Benchmark
+    public int noMoreHints() throws Throwable {
+        return (int) GET_HINT.invoke(NEW_HINT.invoke(answer, answer.length));
+    }
+
+}
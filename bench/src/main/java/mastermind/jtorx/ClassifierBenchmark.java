@@ -0,0 +1,117 @@
+package mastermind.jtorx;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Classifies the output of a complete game, both by trying every {@link OutputClassifier} in turn and by the
+ * {@link ClassifierEngine} the adapter uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassifierBenchmark {
+
+    /**
+     * Output of a standard game: a bad input, a wrong guess, a hint, the summary and a win, followed by the statistics.
+     */
+    static final String TRANSCRIPT =
+            "Welcome to MasterMind!\n" +
+            "The computer chooses a secret code of colored pegs.\n" +
+            "Your task is to guess the color of every peg.\n" +
+            "After every guess, you get the following hits:\n" +
+            "    H: a peg of the right color in the right hole\n" +
+            "    h: a peg of the right color in the wrong hole\n" +
+            "    m: a miss\n" +
+            "In standard mode, there are four pegs and six colors.\n" +
+            "In challenge mode, there are five pegs and seven colors.\n" +
+            "You may ask for as many hints as there are pegs.\n" +
+            "Colors: r = red, o = orange, y = yellow, g = green,\n" +
+            "        b = blue, i = indigo, v = violet\n" +
+            "Good luck!\n" +
+            "\nReady to start? y = yes, n = no, s = statistics\n" +
+            "Error in reading your input.\n" +
+            "Please choose: s = standard mode, c = challenge mode\n" +
+            "Your choice:\n" +
+            "Please choose four colors out of: r, o, y, g, b, i\n" +
+            "Enter the color of every peg.\n" +
+            "Color of peg 1: Color of peg 2: Color of peg 3: Color of peg 4: " +
+            "\n    Your guess: r r o o \n" +
+            "\n    Your hits: H m m m " +
+            "\nWould you like to continue or start a new game or get a hint?\n" +
+            "    c = continue\n" +
+            "    n = new game\n" +
+            "    h = hint\n" +
+            "Hint: There is at least one g peg.\n" +
+            "\nWould you like to continue or start a new game or get a hint?\n" +
+            "    c = continue\n" +
+            "    n = new game\n" +
+            "    h = hint\n" +
+            "    *************************\n" +
+            "    Summary of guesses:\n" +
+            "    Guess 1: r r o o     H m m m \n" +
+            "    *************************\n" +
+            "Color of peg 1: Color of peg 2: Color of peg 3: Color of peg 4: " +
+            "\n    Your guess: r g b i \n" +
+            "\n    Your hits: H H H H  " +
+            "Congratulations! You win!\n" +
+            "**************************************************\n" +
+            "It took you 2 guesses.\n" +
+            "**************************************************\n" +
+            "\nReady to start? y = yes, n = no, s = statistics\n" +
+            "**************************************************\n" +
+            "MasterMind Statistics\n" +
+            "Games played: 1, games won: 1, average guesses: 2.0\n" +
+            "*****************************************************\n" +
+            "Thank you for playing! Bye!\n";
+
+    private final OutputClassifier[] classifiers = new MMAdapter().getOutputClassifiers();
+    private final ClassifierEngine engine = new ClassifierEngine(classifiers);
+    private final CharArrayReader transcript = new CharArrayReader(TRANSCRIPT.toCharArray());
+    private final CharRingBuffer buffer = new CharRingBuffer(TRANSCRIPT.length());
+
+    private void fill() throws IOException {
+        transcript.reset();
+        while (buffer.readFrom(transcript) != -1) {
+        }
+    }
+
+    @Benchmark
+    public void classifiers(Blackhole blackhole) throws IOException {
+        fill();
+        while (buffer.length() > 0) {
+            int length = -1;
+            for (OutputClassifier classifier : classifiers) {
+                length = classifier.run(buffer);
+                if (length != -1) {
+                    blackhole.consume(classifier.getLabel());
+                    break;
+                }
+            }
+            if (length <= 0)
+                throw new IllegalStateException("Unclassified output: " + buffer);
+
+            buffer.consume(length);
+        }
+    }
+
+    @Benchmark
+    public void engine(Blackhole blackhole) throws IOException {
+        fill();
+        while (buffer.length() > 0) {
+            ClassifierEngine.Classification classification = engine.classify(buffer);
+            if (classification == null || classification.getLength() == 0)
+                throw new IllegalStateException("Unclassified output: " + buffer);
+
+            blackhole.consume(classification.getLabel());
+            buffer.consume(classification.getLength());
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package mastermind.jtorx;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses adapter command lines as {@code Adapter.parseCommandLine} does before it hands the command to a session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandTokenizerBenchmark {
+
+    private static final String[] LINES = {
+            "C_INPUT event=?Red\tchannel=in",
+            "C_OUTPUT",
+            "C_INPUT event=?Continue\tchannel=in",
+            "C_OUTPUT",
+            "C_IOKIND iokind=?Hint",
+            "C_INPUT event=?Hint\tchannel=in\tsuspension=0",
+            "C_OUTPUT\tchannel=out",
+    };
+
+    private final CommandTokenizer tokenizer = new CommandTokenizer();
+    private final char[][] lines = new char[LINES.length][];
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < LINES.length; i++)
+            lines[i] = LINES[i].toCharArray();
+    }
+
+    @Benchmark
+    public void parseCommandLines(Blackhole blackhole) {
+        for (char[] line : lines) {
+            if (!tokenizer.tokenize(line, line.length))
+                throw new IllegalStateException("Unable to parse: " + new String(line));
+
+            CommandTokenizer.Command command = tokenizer.getCommand();
+            blackhole.consume(command);
+            blackhole.consume(tokenizer.get("channel"));
+            blackhole.consume(tokenizer.get(command == CommandTokenizer.Command.C_INPUT ? "event" : "iokind"));
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package mastermind.session;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+import mastermind.stdio.StdioRouter;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Round trip of a line of input and the output it causes, as performed by {@code BlackBox.performInput} and
+ * {@code BlackBox.readLines}, which only add crash checks to these session calls.
+ *
+ * The program answers every line with the output of a guess, so that only the overhead of the harness is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+
+    private static final long TIMEOUT = 100;
+
+    private static final String RESPONSE =
+            "\n    Your guess: r r o o \n" +
+            "\n    Your hits: H m m m \n" +
+            "Would you like to continue or start a new game or get a hint?\n" +
+            "    c = continue\n" +
+            "    n = new game\n" +
+            "    h = hint";
+
+    private Session session;
+
+    @Setup
+    public void setUp() {
+        StdioRouter.install();
+        session = SessionEngine.getShared().start(new SessionEngine.Program() {
+            @Override
+            public void run() throws Exception {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+                while (reader.readLine() != null)
+                    System.out.println(RESPONSE);
+            }
+        });
+        session.readLines(TIMEOUT); // Until the program waits for input
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+    }
+
+    @Benchmark
+    public String[] roundTrip() {
+        session.writeLine("o");
+        String[] lines = session.readLines(TIMEOUT);
+        if (lines.length != 8)
+            throw new IllegalStateException("Incomplete output: " + lines.length + " lines");
+        return lines;
+    }
+
+}
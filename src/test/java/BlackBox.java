@@ -1,16 +1,35 @@
 import java.io.*;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import mastermind.log.Log;
+import mastermind.metrics.Metrics;
+import mastermind.metrics.TimeoutModel;
+import mastermind.session.Session;
+import mastermind.session.SessionEngine;
+import mastermind.stdio.StdioRouter;
 
 public abstract class BlackBox {
 
     private static final long    TIMEOUT     = Long.parseLong(      System.getProperty("blackbox.timeout", "100" ));
-    private static final int     BUFFER_SIZE = Integer.parseInt(    System.getProperty("blackbox.buffer" , "8129"));
     private static final boolean PRINT_DEBUG = Boolean.parseBoolean(System.getProperty("blackbox.debug"  , "true"));
+    private static final long    METRICS     = Long.parseLong(      System.getProperty("blackbox.metrics", "0"   ));
+    private static final String  SEED        =                      System.getProperty("blackbox.seed"   );
+    private static final String  TIMEOUTS    =                      System.getProperty("blackbox.timeouts"); // File
+
+    private static final Log console = Log.out(); // Debug output, written in the background
+    private static TimeoutModel timeouts;
 
     private int testsFailed, testsPassed;
-    private Reader reader;
-    private PrintWriter writer;
-    private volatile Throwable programException;
-    private volatile boolean programTerminated;
+    private Session session;
+    private long seed = new Random().nextLong();
+    private String step; // The step whose output is read next, for learning its timeout
+    private boolean streaming; // Whether output of the current step has been read line by line
+
+    /**
+     * Source of all random choices of the tests; seeded at the start of every run.
+     */
+    protected final Random random = new Random();
 
     /**
      * Access to the actual stdout.
@@ -29,59 +48,28 @@ public abstract class BlackBox {
      * @throws IOException
      */
     public void run(final String[] args) throws IOException, ProgramTerminatedException {
-        out = System.out;
-        PipedInputStream programOut = new PipedInputStream(BUFFER_SIZE);
-        reader = new InputStreamReader(programOut);
-        System.setOut(new PrintStream(new PipedOutputStream(programOut), true));
-
-        in = System.in;
-        PipedOutputStream programIn = new PipedOutputStream();
-        writer = new PrintWriter(programIn, true);
-        System.setIn(new PipedInputStream(programIn));
+        StdioRouter.install();
+        out = StdioRouter.getRealOut();
+        in = StdioRouter.getRealIn();
 
         testsFailed = 0;
         testsPassed = 0;
-
-        programTerminated = false;
-        programException = null;
+        random.setSeed(seed);
+        step = "start";
+        streaming = false;
+
+        session = SessionEngine.getShared().start(new SessionEngine.Program() {
+            @Override
+            public void run() throws Exception {
+                runProgram(args);
+            }
+        });
+        session.startTrace(getClass().getName(), seed);
 
         try {
-            Thread thread = new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        runProgram(args);
-                    } catch(Throwable t) {
-                        programException = t;
-                    }
-                    programTerminated = true;
-                }
-            };
-
-            thread.start();
-
-//            try {
-               performTests();
-//                try {
-//                    thread.join(); // Wait for program to finish
-//                } catch (InterruptedException e) {
-//                    Thread.currentThread().interrupt();
-//                }
-
-//            } catch(ProgramTerminatedException e) {
-//                e.printStackTrace();
-//                System.exit(1);
-//            }
+            performTests();
         } finally {
-//            System.err.println();
-//            System.err.printf("Tests failed: %d; tests succeeded: %d.%n", testsFailed, testsPassed);
-
-            System.in.close();
-            System.out.close();
-            reader.close();
-            writer.close();
-            System.setOut(out);
-            System.setIn(in);
+            session.close(); // Stops the program if it is still running
         }
     }
 
@@ -91,10 +79,11 @@ public abstract class BlackBox {
      * @throws ProgramTerminatedException when the tested program has terminated
      */
     protected void checkCrash() throws ProgramTerminatedException {
+        Throwable programException = session.getException();
         if (programException != null) {
             throw new ProgramTerminatedException("The program crashed: " + programException, programException);
         }
-        if (programTerminated) {
+        if (session.isTerminated()) {
             throw new ProgramTerminatedException("Program terminated unexpectedly.");
         }
     }
@@ -102,46 +91,42 @@ public abstract class BlackBox {
     /**
      * Reads all lines from the program's output.
      *
-     * It will stop reading data if no new data has been received for the configured timeout duration.
+     * It will stop reading data as soon as the program waits for input, or if no new data has been received for the
+     * configured timeout duration. With {@code -Dblackbox.timeouts=<file>}, the timeout is learned per step instead,
+     * the step being the latest input.
      *
      * @return output lines
      * @throws ProgramTerminatedException when the tested program has terminated
      */
     protected String[] readLines() throws ProgramTerminatedException {
-        StringBuilder builder = new StringBuilder();
-        try {
-            long start = System.currentTimeMillis();
-
-            while (System.currentTimeMillis() < start + TIMEOUT || reader.ready()) {
-                checkCrash();
-
-                if (reader.ready()) {
-                    int c = reader.read();
-                    if (c == -1) // End of stream; generally should not happen
-                        break;
-                    builder.append((char) c);
-
-//                    if (builder.length() % BUFFER_SIZE == 0) { // Wait for buffer to refill
-//                        try {
-//                            Thread.sleep(10 * TIMEOUT);
-//                        } catch (InterruptedException e) {
-//                            Thread.currentThread().interrupt();
-//                        }
-//                    }
-
-                    start = System.currentTimeMillis();
-                } else {
-                    Thread.yield();
-                }
-            }
-        } catch (IOException e) {
-            checkCrash(); // If the pipe end has closed
-        }
+        return readLines(step);
+    }
 
-        if (builder.length() > 0)
-            return builder.toString().split("\r?\n");
+    /**
+     * Reads all lines from the program's output, learning the timeout of the given step.
+     *
+     * @param step name of the step, such as a model vertex
+     * @return output lines
+     * @throws ProgramTerminatedException when the tested program has terminated
+     *
+     * @see #readLines()
+     */
+    protected String[] readLines(String step) throws ProgramTerminatedException {
+        checkCrash();
+        TimeoutModel timeouts = getTimeouts();
+        String[] lines = timeouts != null ? session.readLines(timeouts, step) : session.readLines(TIMEOUT);
+        checkCrash(); // If the program has terminated while reading
+        return lines;
+    }
 
-        return new String[0];
+    /**
+     * @return the timeouts learned per step, shared by all harnesses; {@code null} if they are not learned
+     */
+    static synchronized TimeoutModel getTimeouts() {
+        if (timeouts == null && TIMEOUTS != null)
+            timeouts = new TimeoutModel(new File(TIMEOUTS), TIMEOUT);
+
+        return timeouts;
     }
 
     /**
@@ -157,18 +142,73 @@ public abstract class BlackBox {
     }
 
     /**
-     * Prints the given lines to (the actual) stdout.
+     * Reads the next line of the program's output as soon as it has been written, without waiting for the rest.
+     *
+     * The output of a step that has been read line by line can still be read with {@link #readLines()}; whatever has
+     * not been read when the next input is performed is read and printed then, so that it does not show up in the
+     * output of the next step.
+     *
+     * @return the line, or {@code null} if the program has written no further output before waiting for input
+     * @throws ProgramTerminatedException when the tested program has terminated
+     */
+    protected String nextLine() throws ProgramTerminatedException {
+        checkCrash();
+        TimeoutModel timeouts = getTimeouts();
+        String line = timeouts != null ? session.readLine(timeouts, step) : session.readLine(TIMEOUT);
+        streaming = true;
+        if (line != null)
+            printOutput(new String[] {line});
+        checkCrash(); // If the program has terminated while reading
+        return line;
+    }
+
+    /**
+     * Tests if the next line of output starts with the given prefix. The test is decided as soon as that line has been
+     * written, rather than once the program waits for input.
+     *
+     * @param description test description
+     * @param prefix expected start of the line
+     * @return the line, or {@code null} if there was none
+     * @throws ProgramTerminatedException when the tested program has terminated
+     *
+     * @see #nextLine()
+     */
+    protected String expectLine(String description, String prefix) throws ProgramTerminatedException {
+        String line = nextLine();
+        test(description, line != null && line.startsWith(prefix));
+        return line;
+    }
+
+    /**
+     * Tests if the next line of output matches the given pattern as a whole.
+     *
+     * @param description test description
+     * @param pattern expected line
+     * @return the match, for its groups, or {@code null} if the line does not match
+     * @throws ProgramTerminatedException when the tested program has terminated
+     *
+     * @see #nextLine()
+     */
+    protected Matcher expectPattern(String description, Pattern pattern) throws ProgramTerminatedException {
+        String line = nextLine();
+        Matcher matcher = line != null ? pattern.matcher(line) : null;
+        boolean matches = matcher != null && matcher.matches();
+        test(description, matches);
+        return matches ? matcher : null;
+    }
+
+    /**
+     * Prints the given lines to (the actual) stdout. They are written in the background, so this does not wait for the
+     * console.
      *
      * @param lines lines to print
      */
     protected void printOutput(String[] lines) {
-        if (PRINT_DEBUG) {
-            if (lines.length > 0) {
-                out.println("OUT:   " + lines[0]);
-                for (int i = 1; i < lines.length; i++) {
-                    out.println("       " + lines[i]);
-                }
-            }
+        if (PRINT_DEBUG && lines.length > 0 && console.isEnabled(Log.Level.DEBUG)) {
+            StringBuilder message = new StringBuilder("OUT:   ").append(lines[0]);
+            for (int i = 1; i < lines.length; i++)
+                message.append(System.lineSeparator()).append("       ").append(lines[i]);
+            console.debug(message.toString());
         }
     }
 
@@ -179,10 +219,15 @@ public abstract class BlackBox {
      * @throws ProgramTerminatedException when the tested program has terminated
      */
     protected void performInput(String line) throws ProgramTerminatedException {
+        if (streaming) {
+            streaming = false;
+            readAndPrintLines(); // The rest of the output of the step
+        }
         checkCrash();
-        writer.println(line);
+        session.writeLine(line);
+        step = "input " + line;
         if (PRINT_DEBUG)
-            out.println("IN:    " + line);
+            console.debug("IN:    " + line);
     }
 
     /**
@@ -210,6 +255,7 @@ public abstract class BlackBox {
             testsPassed++;
         } else {
             testsFailed++;
+            console.flush(); // So that the failure follows the output it is about
             System.err.printf("  %s failed.%n", description);
         }
     }
@@ -240,6 +286,58 @@ public abstract class BlackBox {
      */
     protected abstract void performTests() throws ProgramTerminatedException;
 
+    /**
+     * Returns the seed of the first run of a harness: the one configured by {@code -Dblackbox.seed}, or a random one.
+     *
+     * @param index index of the harness, so that harnesses that run at the same time make different choices
+     * @return the seed
+     */
+    static long initialSeed(int index) {
+        long seed = SEED != null ? Long.parseLong(SEED) : new Random().nextLong();
+        return seed + index;
+    }
+
+    /**
+     * Derives the seed of the run that follows a run with the given seed.
+     *
+     * @param seed seed of a run
+     * @return seed of the next run
+     */
+    static long nextSeed(long seed) {
+        return new Random(seed).nextLong();
+    }
+
+    /**
+     * Starts printing the metrics to stderr periodically, if configured by {@code -Dblackbox.metrics=<milliseconds>}.
+     */
+    static void startMetricsReporting() {
+        Metrics.getShared().startReporting(METRICS, Metrics.toStream(System.err));
+    }
+
+    /**
+     * Stops periodic reporting and prints the metrics of the whole run to stderr.
+     */
+    static void printMetrics() {
+        console.flush();
+        Metrics.getShared().stopReporting();
+        Metrics.getShared().print(System.err);
+        if (getTimeouts() != null)
+            getTimeouts().report(Metrics.toStream(System.err));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the following runs; a run with the same seed makes the same random choices.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
     public int getTestsFailed() {
         return testsFailed;
     }
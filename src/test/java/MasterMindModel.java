@@ -1,13 +1,25 @@
 import java.io.*;
-import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.*;
+import mastermind.log.Log;
+import mastermind.metrics.TimeoutModel;
+import mastermind.model.CoverageMap;
+import mastermind.model.ModelRunner;
+import mastermind.model.PathCache;
+import mastermind.model.PathPlanner;
+import mastermind.model.PathTrie;
+import mastermind.session.Session;
+import mastermind.solver.CodeSpace;
+import mastermind.solver.ConsistencyOracle;
+import mastermind.session.SessionEngine;
+import mastermind.stdio.StdioRouter;
 import org.apache.log4j.Logger;
 import org.graphwalker.Util;
 import org.graphwalker.conditions.EdgeCoverage;
-import org.graphwalker.exceptions.InvalidDataException;
-import org.graphwalker.exceptions.StopConditionException;
 import org.graphwalker.generators.A_StarPathGenerator;
 import org.graphwalker.generators.PathGenerator;
 import org.graphwalker.multipleModels.ModelHandler;
@@ -15,19 +27,33 @@ import org.graphwalker.multipleModels.ModelHandler;
 public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
 
     private static final long    TIMEOUT     = Long.parseLong(      System.getProperty("blackbox.timeout", "100" ));
-    private static final int     BUFFER_SIZE = Integer.parseInt(    System.getProperty("blackbox.buffer" , "8129"));
     private static final boolean PRINT_DEBUG = Boolean.parseBoolean(System.getProperty("blackbox.debug"  , "true"));
+    private static final boolean COMPILED    = "compiled".equals(System.getProperty("blackbox.model", "graphwalker"));
+    private static final long    MAX_STEPS   = Long.parseLong(      System.getProperty("blackbox.steps"  , "100000"));
+    private static final int     WORKERS     = Integer.parseInt(    System.getProperty("blackbox.workers", "1"     ));
+    private static final String  PATHS       = System.getProperty("blackbox.paths"); // Directory of planned paths
+    private static final int     PATH_LENGTH = 100;
 
     private int testsFailed, testsPassed;
-    private Reader reader;
-    private PrintWriter writer;
-    private volatile Throwable programException;
-    private volatile boolean programTerminated;
+    private Session session;
 
     private static Logger logger = Util.setupLogger(MasterMindModel.class);
-    private static final Random random = new Random();
+    private static final Log console = Log.out(); // Debug output, written in the background
+
+    private final Random random = new Random();
+    private long seed = BlackBox.initialSeed(0);
     private static final char[] PEGS = {'r', 'o', 'y', 'g', 'b', 'i', 'v'};
 
+    private ConsistencyOracle oracle;
+    private final int[] guess = new int[5];
+    private int pegs;
+    private int holes; // Holes of the current game; the model variable n
+
+    /**
+     * The compiled model when walked by a {@link ModelRunner} instead of GraphWalker.
+     */
+    private MasterMindModelDispatch dispatch;
+
     /**
      * Access to the actual stdout.
      */
@@ -42,6 +68,18 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
         super(model, true, generator, false);
     }
 
+    /**
+     * Moves the model to another vertex, whether it is walked by GraphWalker or compiled.
+     *
+     * @param vertex label of the vertex
+     */
+    private void setCurrentVertex(String vertex) {
+        if (dispatch != null)
+            dispatch.setCurrentVertex(vertex);
+        else
+            getMbt().setCurrentVertex(vertex);
+    }
+
     /**
      * Sets up the system, runs the program and performs the tests.
      *
@@ -49,35 +87,28 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      * @throws IOException
      */
     private void run(final String[] args) throws IOException, ProgramTerminatedException {
-        out = System.out;
-        PipedInputStream programOut = new PipedInputStream(BUFFER_SIZE);
-        reader = new InputStreamReader(programOut);
-        System.setOut(new PrintStream(new PipedOutputStream(programOut), true));
-
-        in = System.in;
-        PipedOutputStream programIn = new PipedOutputStream();
-        writer = new PrintWriter(programIn, true);
-        System.setIn(new PipedInputStream(programIn));
+        StdioRouter.install();
+        out = StdioRouter.getRealOut();
+        in = StdioRouter.getRealIn();
 
         testsFailed = 0;
         testsPassed = 0;
 
-        programTerminated = false;
-        programException = null;
-
-        Thread thread = new Thread() {
+        if (session != null)
+            session.close(); // Stops the program of a previous run if it is still running
+        session = SessionEngine.getShared().start(new SessionEngine.Program() {
             @Override
-            public void run() {
-                try {
-                    MasterMind.main(args);
-                } catch(Throwable t) {
-                    programException = t;
-                }
-                programTerminated = true;
+            public void run() throws Exception {
+                MasterMind.main(args);
             }
-        };
+        });
 
-        thread.start();
+        // Every program run gets its own seed, so that it can be reproduced on its own
+        random.setSeed(seed);
+        session.startTrace(getClass().getName(), seed);
+        if (PRINT_DEBUG)
+            console.debug("SEED:  " + seed);
+        seed = BlackBox.nextSeed(seed);
     }
 
     /**
@@ -86,10 +117,11 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      * @throws ProgramTerminatedException when the tested program has terminated
      */
     private void checkCrash() throws ProgramTerminatedException {
+        Throwable programException = session.getException();
         if (programException != null) {
             throw new ProgramTerminatedException("The program crashed: " + programException, programException);
         }
-        if (programTerminated) {
+        if (session.isTerminated()) {
             throw new ProgramTerminatedException("Program terminated unexpectedly.");
         }
     }
@@ -97,65 +129,50 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
     /**
      * Reads all lines from the program's output.
      *
-     * It will stop reading data if no new data has been received for the configured timeout duration.
+     * It will stop reading data as soon as the program waits for input, or if no new data has been received for the
+     * configured timeout duration. With {@code -Dblackbox.timeouts=<file>}, the timeout is learned per vertex instead.
      *
+     * @param vertex the vertex whose output is read
      * @return output lines
      * @throws ProgramTerminatedException when the tested program has terminated
      */
-    private String[] readLines() throws ProgramTerminatedException {
-        StringBuilder builder = new StringBuilder();
-        try {
-            long start = System.currentTimeMillis();
-
-            while (System.currentTimeMillis() < start + TIMEOUT || reader.ready()) {
-                checkCrash();
-
-                if (reader.ready()) {
-                    int c = reader.read();
-                    if (c == -1) // End of stream; generally should not happen
-                        break;
-                    builder.append((char) c);
-
-                    start = System.currentTimeMillis();
-                } else {
-                    Thread.yield();
-                }
-            }
-        } catch (IOException e) {
-            checkCrash(); // If the pipe end has closed
-        }
-
-        if (builder.length() > 0)
-            return builder.toString().split("\r?\n");
+    private String[] readLines(String vertex) throws ProgramTerminatedException {
+        checkCrash();
+        String[] lines = readOutput(vertex);
+        checkCrash(); // If the program has terminated while reading
+        return lines;
+    }
 
-        return new String[0];
+    private String[] readOutput(String vertex) {
+        TimeoutModel timeouts = BlackBox.getTimeouts();
+        return timeouts != null ? session.readLines(timeouts, vertex) : session.readLines(TIMEOUT);
     }
 
     /**
      * Reads all output lines, prints and then returns the result.
      *
+     * @param vertex the vertex whose output is read
      * @return output lines
      * @throws ProgramTerminatedException when the tested program has terminated
      */
-    private String[] readAndPrintLines() throws ProgramTerminatedException {
-        String[] output = readLines();
+    private String[] readAndPrintLines(String vertex) throws ProgramTerminatedException {
+        String[] output = readLines(vertex);
         printOutput(output);
         return output;
     }
 
     /**
-     * Prints the given lines to (the actual) stdout.
+     * Prints the given lines to (the actual) stdout. They are written in the background, so this does not wait for the
+     * console.
      *
      * @param lines lines to print
      */
     private void printOutput(String[] lines) {
-        if (PRINT_DEBUG) {
-            if (lines.length > 0) {
-                out.println("OUT:   " + lines[0]);
-                for (int i = 1; i < lines.length; i++) {
-                    out.println("       " + lines[i]);
-                }
-            }
+        if (PRINT_DEBUG && lines.length > 0 && console.isEnabled(Log.Level.DEBUG)) {
+            StringBuilder message = new StringBuilder("OUT:   ").append(lines[0]);
+            for (int i = 1; i < lines.length; i++)
+                message.append(System.lineSeparator()).append("       ").append(lines[i]);
+            console.debug(message.toString());
         }
     }
 
@@ -167,9 +184,9 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      */
     private void performInput(String line) throws ProgramTerminatedException {
         checkCrash();
-        writer.println(line);
+        session.writeLine(line);
         if (PRINT_DEBUG)
-            out.println("IN:    " + line);
+            console.debug("IN:    " + line);
     }
 
     /**
@@ -197,6 +214,7 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
             testsPassed++;
         } else {
             testsFailed++;
+            console.flush(); // So that the failure follows the output it is about
             if (arguments.length > 0)
                 System.err.printf("  %s (%s) failed.%n", description, Arrays.toString(arguments));
             else
@@ -215,12 +233,50 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
         test("Test", expression, arguments);
     }
 
+    /**
+     * Starts checking the hits of a new game.
+     *
+     * @param holes number of holes
+     */
+    private void startGame(int holes) {
+        if (oracle == null || oracle.getSpace().getHoles() != holes)
+            oracle = new ConsistencyOracle(CodeSpace.of(holes, holes + 2));
+        else
+            oracle.reset();
+        this.holes = holes;
+        pegs = 0;
+    }
+
+    /**
+     * Checks the hits reported for the guess that has just been entered against those of the earlier guesses.
+     *
+     * @param output output following the final peg
+     */
+    private void checkHits(String[] output) {
+        if (oracle == null || pegs != oracle.getSpace().getHoles()) {
+            pegs = 0;
+            return;
+        }
+
+        CodeSpace space = oracle.getSpace();
+        int code = space.encode(guess);
+        pegs = 0;
+        for (String line : output) {
+            if (line.contains("Your hits: ")) {
+                if (oracle.isConsistent()) // Report the first contradiction of a game only
+                    test("Test v_FinalPeg (hits consistent)", oracle.addFeedback(code, space.parseHits(line)), line);
+                return;
+            }
+        }
+    }
+
     /**
      * This method implements the Edge 'e_SelectChallenge'
      *
      */
     public void e_SelectChallenge() throws ProgramTerminatedException {
         performInput('c');
+        startGame(5);
     }
 
 
@@ -255,10 +311,11 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      * This method implements the Edge 'e_SelectPeg'
      *
      */
-    public void e_SelectPeg() throws ProgramTerminatedException, InvalidDataException {
-        Integer mode = Integer.valueOf(getMbt().getDataValue("n"));
-        char input = PEGS[random.nextInt(mode + 2)];
-        performInput(input);
+    public void e_SelectPeg() throws ProgramTerminatedException {
+        int color = random.nextInt(holes + 2);
+        performInput(PEGS[color]);
+        if (pegs < guess.length)
+            guess[pegs++] = color;
     }
 
 
@@ -268,6 +325,7 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      */
     public void e_SelectStandard() throws ProgramTerminatedException {
         performInput('s');
+        startGame(4);
     }
 
 
@@ -312,11 +370,12 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      *
      */
     public void v_FinalPeg() throws ProgramTerminatedException {
-        String[] output = readAndPrintLines();
+        String[] output = readAndPrintLines("v_FinalPeg");
+        checkHits(output);
         if (output.length > 0 && output[4].startsWith("Would you like to continue or start a new game or get a hint?"))
-            getMbt().setCurrentVertex("v_GuessResult");
+            setCurrentVertex("v_GuessResult");
         else if (output.length > 0 && output[5].startsWith("It took you "))
-            getMbt().setCurrentVertex("v_MainMenu");
+            setCurrentVertex("v_MainMenu");
             //TODO: test number of guesses
         else
             test("Test v_FinalPeg", false);
@@ -338,7 +397,7 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      */
     public void v_MainMenu() throws ProgramTerminatedException {
         //Problem: what if set to Main Menu through win game?
-        String[] output = readAndPrintLines();
+        String[] output = readAndPrintLines("v_MainMenu");
         test("Test v_MainMenu", output.length > 0 && output[0].startsWith("Ready to start a new game?"));
 
         //OR (if chosen show statistics)
@@ -352,7 +411,7 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      *
      */
     public void v_ModeMenu() throws ProgramTerminatedException {
-        String[] output = readAndPrintLines();
+        String[] output = readAndPrintLines("v_ModeMenu");
         test("Test v_ModeMenu", output.length > 0 && output[0].startsWith("Please choose: "));
     }
 
@@ -361,10 +420,10 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      * This method implements the Vertex 'v_RequestPeg'
      *
      */
-    public void v_RequestPeg() throws ProgramTerminatedException, InvalidDataException {
+    public void v_RequestPeg() throws ProgramTerminatedException {
         //How to check first peg?
-        String[] output = readAndPrintLines();
-        if (Integer.valueOf(getMbt().getDataValue("n")) > 1)
+        String[] output = readAndPrintLines("v_RequestPeg");
+        if (holes > 1)
             test("Test v_ModeMenu", output.length > 0 && output[0].startsWith("Color of peg "));
     }
 
@@ -374,22 +433,135 @@ public class MasterMindModel extends org.graphwalker.multipleModels.ModelAPI {
      *
      */
     public void v_Stopped() throws ProgramTerminatedException {
-        String[] output = readAndPrintLines();
+        String[] output = readOutput("v_Stopped"); // Unlike elsewhere, the program is expected to terminate here
+        printOutput(output);
+        if (session.getException() != null)
+            checkCrash();
         test("Test v_Stopped", output.length > 0 && output[0].startsWith("Thank you for playing! Bye!"));
     }
 
 
 
-    public static void main(String[] args) throws URISyntaxException, StopConditionException, InterruptedException {
-        ModelHandler handler = new ModelHandler();
+    /**
+     * Walks the compiled model until all edges are covered, without GraphWalker's reflection and data interpreter.
+     * The compiled model must have been set up.
+     *
+     * Planned paths are run first, each worker taking its share; paths with a common prefix share its walk (see
+     * {@link PathTrie}). The edges they leave uncovered are walked afterwards.
+     *
+     * @param coverage coverage shared with the other workers
+     * @param worker index of this worker, from 0
+     * @param workers number of workers
+     * @param paths planned paths
+     * @return the runner after the walk
+     * @throws Exception if a method of the model fails
+     */
+    private ModelRunner runCompiled(CoverageMap coverage, int worker, int workers, List<int[]> paths) throws Exception {
+        ModelRunner runner = new ModelRunner(dispatch, random, coverage, worker, workers);
+        try {
+            List<int[]> share = new ArrayList<>();
+            for (int i = worker; i < paths.size(); i += workers)
+                share.add(paths.get(i));
+            if (!share.isEmpty()) {
+                PathTrie trie = new PathTrie(dispatch, share);
+                trie.run(runner);
+                if (PRINT_DEBUG)
+                    console.debug("PATHS: " + trie.getStatistics() + "; steps walked: " + runner.getSteps());
+            }
+
+            runner.run(MAX_STEPS);
+        } catch (ProgramTerminatedException e) {
+            console.flush();
+            System.err.println("  " + e.getMessage());
+        } finally {
+            if (session != null)
+                session.close();
+        }
+        return runner;
+    }
 
+    /**
+     * Walks the compiled model with several workers at the same time. Every worker has its own model instance and
+     * program session; together they cover the edges of the model, sharing a coverage map.
+     *
+     * @param file model file
+     * @param workers number of workers
+     * @return statistics of the walk
+     * @throws Exception if a worker fails
+     */
+    private static String runCompiled(File file, final int workers) throws Exception {
+        SessionEngine.reserve(workers);
+        final List<MasterMindModel> models = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            MasterMindModel model = new MasterMindModel(file, new A_StarPathGenerator(new EdgeCoverage(1.0)));
+            model.dispatch = new MasterMindModelDispatch(model);
+            model.seed = BlackBox.initialSeed(i);
+            models.add(model);
+        }
+        final CoverageMap coverage = new CoverageMap(models.get(0).dispatch.getEdgeCount());
+        final List<int[]> paths = PATHS == null ? new ArrayList<int[]>()
+                : new PathCache(new File(PATHS)).getPaths(file, new PathPlanner(models.get(0).dispatch, PATH_LENGTH));
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<ModelRunner>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            final int worker = i;
+            futures.add(executor.submit(new Callable<ModelRunner>() {
+                @Override
+                public ModelRunner call() throws Exception {
+                    return models.get(worker).runCompiled(coverage, worker, workers, paths);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        long steps = 0;
+        for (Future<ModelRunner> future : futures) {
+            try {
+                steps += future.get().getSteps();
+            } catch (ExecutionException e) {
+                System.err.println("Worker failed with exception: " + e.getCause());
+            }
+        }
+
+        int passed = 0, failed = 0;
+        for (MasterMindModel model : models) {
+            passed += model.testsPassed;
+            failed += model.testsFailed;
+        }
+        return String.format("%s; steps: %d; workers: %d; tests passed: %d; tests failed: %d",
+                coverage, steps, workers, passed, failed);
+    }
+
+    /**
+     * Main entry point for the model-based test.
+     *
+     * The model is walked by GraphWalker by default. With {@code -Dblackbox.model=compiled}, it is walked through its
+     * compiled dispatch table ({@link MasterMindModelDispatch}) instead, by {@code -Dblackbox.workers} workers in
+     * parallel (one by default), each with a program thread of its own. With {@code -Dblackbox.paths=<directory>}, they first follow paths planned to cover all
+     * edges, which are kept in that directory until the model changes. The dispatch table is generated from
+     * {@code MasterMindModel.graphml} by {@code sbt compileModel}.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
         URL url = MasterMindModel.class.getResource("/MasterMindModel.graphml");
         File file = new File(url.toURI());
+        BlackBox.startMetricsReporting();
 
-        handler.add("Play", new MasterMindModel(file, new A_StarPathGenerator(new EdgeCoverage(1.0))));
-        handler.execute("Play");
+        String statistics;
+        if (COMPILED) {
+            statistics = runCompiled(file, WORKERS);
+        } else {
+            ModelHandler handler = new ModelHandler();
+            handler.add("Play", new MasterMindModel(file, new A_StarPathGenerator(new EdgeCoverage(1.0))));
+            handler.execute("Play");
+            statistics = handler.getStatistics();
+        }
 
-        System.out.println(handler.getStatistics());
+        console.flush();
+        System.out.println(statistics);
+        BlackBox.printMetrics();
     }
 
 
@@ -0,0 +1,172 @@
+// Generated from MasterMindModel.graphml by mastermind.model.ModelCompiler; do not edit.
+
+import mastermind.model.CompiledModel;
+
+/**
+ * The GraphWalker model of {@link MasterMindModel}, compiled into a dispatch table.
+ */
+final class MasterMindModelDispatch extends CompiledModel {
+
+    private static final String[] VERTICES = {
+            "Start", // 0
+            "v_MainMenu", // 1
+            "v_Stopped", // 2
+            "v_ModeMenu", // 3
+            "v_RequestPeg", // 4
+            "v_GuessResult", // 5
+            "v_FinalPeg", // 6
+    };
+
+    private static final String[] EDGES = {
+            "e_StartProgram", // 0: e0
+            "e_StartProgram", // 1: e1
+            "e_SelectNo", // 2: e2
+            "e_SelectStats", // 3: e3
+            "e_SelectYes", // 4: e4
+            null, // 5: e5
+            "e_SelectChallenge", // 6: e6
+            "e_SelectPeg", // 7: e7
+            "e_SelectHint", // 8: e8
+            "e_SelectContinue", // 9: e9
+            "e_SelectStartNew", // 10: e10
+            "e_SelectPeg", // 11: e11
+            "e_SelectStandard", // 12: e12
+            null, // 13: e13
+            null, // 14: e14
+    };
+
+    private static final int[] SOURCES = {0, 2, 1, 1, 1, 3, 3, 4, 5, 5, 5, 4, 3, 6, 6};
+    private static final int[] TARGETS = {1, 1, 2, 1, 3, 3, 4, 4, 4, 4, 1, 6, 4, 5, 1};
+
+    private final MasterMindModel model;
+
+    // Model variables
+    int g, i, n;
+
+    MasterMindModelDispatch(MasterMindModel model) {
+        super(VERTICES, EDGES, SOURCES, TARGETS, 0);
+        this.model = model;
+    }
+
+    @Override
+    protected void resetVariables() {
+        g = 0;
+        i = 0;
+        n = 0;
+    }
+
+    @Override
+    public boolean isEnabled(int edge) {
+        switch (edge) {
+            case 7: return i<n; // e7
+            case 11: return i==n; // e11
+            default: return true;
+        }
+    }
+
+    @Override
+    public int[] getVariables() {
+        return new int[] {g, i, n};
+    }
+
+    @Override
+    public void setVariables(int[] values) {
+        g = values[0];
+        i = values[1];
+        n = values[2];
+    }
+
+    @Override
+    protected void performActions(int edge) {
+        switch (edge) {
+            case 6: // e_SelectChallenge/n=5;i=1;g=0
+                n=5;
+                i=1;
+                g=0;
+                break;
+            case 7: // e_SelectPeg[i<n]/i++
+                i++;
+                break;
+            case 8: // e_SelectHint/i=1;g++
+                i=1;
+                g++;
+                break;
+            case 9: // e_SelectContinue/i=1;g++
+                i=1;
+                g++;
+                break;
+            case 12: // e_SelectStandard/n=4;i=1;g=0
+                n=4;
+                i=1;
+                g=0;
+                break;
+        }
+    }
+
+    @Override
+    protected void performEdge(int edge) throws Exception {
+        switch (edge) {
+            case 0: // e0
+                model.e_StartProgram();
+                break;
+            case 1: // e1
+                model.e_StartProgram();
+                break;
+            case 2: // e2
+                model.e_SelectNo();
+                break;
+            case 3: // e3
+                model.e_SelectStats();
+                break;
+            case 4: // e4
+                model.e_SelectYes();
+                break;
+            case 6: // e6
+                model.e_SelectChallenge();
+                break;
+            case 7: // e7
+                model.e_SelectPeg();
+                break;
+            case 8: // e8
+                model.e_SelectHint();
+                break;
+            case 9: // e9
+                model.e_SelectContinue();
+                break;
+            case 10: // e10
+                model.e_SelectStartNew();
+                break;
+            case 11: // e11
+                model.e_SelectPeg();
+                break;
+            case 12: // e12
+                model.e_SelectStandard();
+                break;
+        }
+    }
+
+    @Override
+    protected void performVertex(int vertex) throws Exception {
+        switch (vertex) {
+            case 1:
+                model.v_MainMenu();
+                break;
+            case 2:
+                model.v_Stopped();
+                break;
+            case 3:
+                model.v_ModeMenu();
+                break;
+            case 4:
+                model.v_RequestPeg();
+                break;
+            case 5:
+                model.v_GuessResult();
+                break;
+            case 6:
+                model.v_FinalPeg();
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import mastermind.session.Session;
+import mastermind.session.SessionEngine;
+import mastermind.stdio.StdioRouter;
+import mastermind.trace.TraceReader;
+
+/**
+ * Replays sessions recorded with {@code -Dblackbox.trace=<file>} against the program.
+ *
+ * Every session is replayed on a new program instance: its recorded inputs are presented in order, without any random
+ * choices, and all output is compared with the recorded output. The output is taken as soon as the program waits for
+ * input, so a replay takes no more time than the program itself needs; output that was recorded line by line (see
+ * {@code BlackBox#nextLine()}) is compared as a whole, up to the next input. Note that the program makes random choices of
+ * its own (such as the secret code), which may make a replay diverge from the recording.
+ *
+ * Usage: {@code MasterMindReplay <trace file> [session id ...]}; without session ids, all sessions are replayed.
+ */
+public class MasterMindReplay {
+
+    private static final long TIMEOUT = Long.parseLong(System.getProperty("blackbox.timeout", "100"));
+
+    /**
+     * Replays a single session.
+     *
+     * @param id session id
+     * @param records records of the session
+     * @return whether the output matched the recorded output
+     */
+    static boolean replay(int id, List<TraceReader.Record> records) {
+        String name = "?";
+        long seed = 0;
+        if (!records.isEmpty() && records.get(0).isStart()) {
+            name = records.get(0).getText();
+            seed = records.get(0).getSeed();
+        }
+
+        long start = System.nanoTime();
+        Session session = SessionEngine.getShared().start(new SessionEngine.Program() {
+            @Override
+            public void run() throws Exception {
+                MasterMind.main(new String[0]);
+            }
+        });
+        try {
+            int step = 0;
+            String input = null;
+            for (int i = 0; i < records.size(); i++) {
+                TraceReader.Record record = records.get(i);
+                if (record.isInput()) {
+                    input = record.getText();
+                    session.writeLine(input);
+                } else if (record.isOutput()) {
+                    step++;
+                    List<String> lines = new ArrayList<>(Arrays.asList(record.getLines()));
+                    while (i + 1 < records.size() && records.get(i + 1).isOutput())
+                        lines.addAll(Arrays.asList(records.get(++i).getLines()));
+                    String[] recorded = lines.toArray(new String[lines.size()]);
+
+                    String[] output = session.readLines(TIMEOUT);
+                    if (!Arrays.equals(output, recorded)) {
+                        System.err.printf("Session %d (%s, seed %d) differs at step %d, after input %s:%n",
+                                id, name, seed, step, input == null ? "(none)" : "'" + input + "'");
+                        printLines("  Recorded: ", recorded);
+                        printLines("  Replayed: ", output);
+                        if (session.getException() != null)
+                            System.err.println("  The program crashed: " + session.getException());
+                        return false;
+                    }
+                }
+            }
+
+            System.err.printf("Session %d (%s, seed %d): %d steps replayed in %d ms.%n",
+                    id, name, seed, step, (System.nanoTime() - start) / 1000000);
+            return true;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void printLines(String prefix, String[] lines) {
+        System.err.println(prefix + (lines.length > 0 ? lines[0] : "(no output)"));
+        for (int i = 1; i < lines.length; i++)
+            System.err.println("            " + lines[i]);
+    }
+
+    /**
+     * Main entry point for replaying.
+     *
+     * @param args trace file, optionally followed by the ids of the sessions to replay
+     * @throws IOException if the trace cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: MasterMindReplay <trace file> [session id ...]");
+            System.exit(2);
+        }
+
+        StdioRouter.install();
+        Map<Integer, List<TraceReader.Record>> sessions = TraceReader.readSessions(new File(args[0]));
+        int replayed = 0, differing = 0;
+        for (Map.Entry<Integer, List<TraceReader.Record>> session : sessions.entrySet()) {
+            if (args.length > 1 && !Arrays.asList(args).subList(1, args.length).contains(session.getKey().toString()))
+                continue;
+
+            replayed++;
+            if (!replay(session.getKey(), session.getValue()))
+                differing++;
+        }
+
+        System.err.printf("Sessions replayed: %d; sessions differing: %d.%n", replayed, differing);
+    }
+
+}
@@ -1,14 +1,21 @@
 import java.io.IOException;
-import java.util.Random;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import mastermind.solver.CodeSpace;
+import mastermind.solver.ConsistencyOracle;
+import mastermind.solver.Solver;
 
 public class MasterMindTest extends BlackBox {
 
-    private static final Random random = new Random();
     private static final char[] PEGS = {'r', 'o', 'y', 'g', 'b', 'i'};
+    private static final int HOLES = 4;
+    private static final CodeSpace CODES = CodeSpace.of(HOLES, PEGS.length);
+    private static final Pattern GUESSES = Pattern.compile("It took you (\\d+) guesses.");
 
     private boolean solutionFound;
+    private int pegsEntered; // Bit mask of the pegs entered in the current game
+    private Solver solver;
+    private final ConsistencyOracle oracle = new ConsistencyOracle(CODES);
 
     // UTILITY FUNCTIONS
 
@@ -74,13 +81,83 @@ public class MasterMindTest extends BlackBox {
     }
 
     /**
-     * Input a randomly selected peg and return it.
+     * Inputs a peg and records that it has been entered in the current game.
      *
-     * @return the selected peg
+     * @param color color index of the peg
+     * @return the peg
      * @throws ProgramTerminatedException when the tested program has terminated
      */
-    private char inputRandomPeg() throws ProgramTerminatedException {
-        return performRandomInput(PEGS);
+    private char performPegInput(int color) throws ProgramTerminatedException {
+        char input = PEGS[color];
+        performInput(input);
+        pegsEntered |= 1 << color;
+        return input;
+    }
+
+    /**
+     * Chooses the pegs of the next guess: those of the solver, or random ones if the hits so far are inconsistent.
+     *
+     * @return the color index of every peg
+     */
+    private int[] nextGuess() {
+        int[] colors = new int[HOLES];
+        if (solver.getCandidateCount() > 0) {
+            int code = solver.nextGuess();
+            for (int hole = 0; hole < HOLES; hole++)
+                colors[hole] = CODES.color(code, hole);
+        } else {
+            for (int hole = 0; hole < HOLES; hole++)
+                colors[hole] = random.nextInt(PEGS.length);
+        }
+        return colors;
+    }
+
+    /**
+     * Checks the hits reported for a guess against those of the earlier guesses, and passes them on to the solver.
+     *
+     * @param colors the color index of every peg of the guess
+     * @param hitsLine the output line containing the hits
+     */
+    private void addFeedback(int[] colors, String hitsLine) {
+        int guess = CODES.encode(colors);
+        int score = CODES.parseHits(hitsLine);
+        if (oracle.isConsistent()) // Report the first contradiction of a game only
+            test("Test 5c (hits consistent)", oracle.addFeedback(guess, score));
+        if (score != -1)
+            solver.addFeedback(guess, score);
+    }
+
+    /**
+     * Tests the output after the last peg of a guess, line by line as the program writes it.
+     *
+     * @param description test description
+     * @param guess expected text of the guess, such as {@code "Your guess: r o y g"}
+     * @param colors the color index of every peg of the guess
+     * @param guesses number of guesses of the game so far, including this one
+     * @return whether the guess has solved the game
+     * @throws ProgramTerminatedException when the tested program has terminated
+     */
+    private boolean testGuessResult(String description, String guess, int[] colors, int guesses)
+            throws ProgramTerminatedException {
+        String[] output = new String[5];
+        for (int i = 0; i < output.length; i++)
+            if ((output[i] = nextLine()) == null)
+                break;
+
+        test(description, output[4] != null &&
+                output[1].contains(guess) &&
+                output[3].matches("\\s*Your hits: [Hhm] [Hhm] [Hhm] [Hhm].*"));
+
+        if (output[3] != null)
+            addFeedback(colors, output[3]);
+
+        if (output[4] == null || output[4].startsWith("Would you like"))
+            return false;
+
+        Matcher matcher = expectPattern("Test 5b (step 4)", GUESSES);
+        if (matcher != null)
+            test("Test 5d (number of guesses)", Integer.parseInt(matcher.group(1)) == guesses);
+        return true;
     }
 
     /**
@@ -90,6 +167,9 @@ public class MasterMindTest extends BlackBox {
      */
     private void testGame() throws ProgramTerminatedException {
         solutionFound = false;
+        solver = new Solver(CODES);
+        oracle.reset();
+        pegsEntered = 0;
         int guess = 0;
 
         // Test Case ID: 6 & 9
@@ -97,30 +177,22 @@ public class MasterMindTest extends BlackBox {
         while(!solutionFound && guess < 3) {
             // Collects the chosen pegs to be checked at the end of a guess; i.e. "r o y g"
             StringBuilder inputs = new StringBuilder();
+            int[] colors = new int[HOLES];
             for (int j = 1; j <= 4; j++) {
-                char input = PEGS[j];
+                colors[j - 1] = j;
                 if (guess == 2 && j == 1) // Test Case ID: 9 - change one input
-                    input = PEGS[5];
-                performInput(input);
+                    colors[j - 1] = 5;
+                char input = performPegInput(colors[j - 1]);
                 inputs.append(' ').append(input);
-                String[] output = readAndPrintLines();
 
                 String description = "Test 5 (step " + j + ")";
                 if (j < 4)
-                    test(description, output.length > 0 && output[0].startsWith("Color of peg " + (j + 1)));
+                    expectLine(description, "Color of peg " + (j + 1));
                 else {
-                    test(description, output.length > 4 &&
-                            output[1].contains("Your guess:"+inputs.toString()) &&
-                            output[3].matches("\\s*Your hits: [Hhm] [Hhm] [Hhm] [Hhm].*"));
-
-                    if (!output[4].startsWith("Would you like")) {
-                        solutionFound = true;
-                        Matcher matcher = Pattern.compile("It took you (\\d+) guesses.").matcher(output[5]);
-                        test("Test 5b (step 4)", matcher.matches());
-                    }
-                    else {
+                    solutionFound = testGuessResult(description, "Your guess:" + inputs, colors, guess + 1);
+                    if (!solutionFound) {
                         performInput('c');
-                        output = readAndPrintLines();
+                        String[] output = readAndPrintLines();
                         String[] splitOutput = output[guess+2].split(":");
                         curOutput = splitOutput[1];
                     }
@@ -155,41 +227,29 @@ public class MasterMindTest extends BlackBox {
             guess++;
         }
         int hints = 0;
-        while(!solutionFound) {// Randomly guessing until it finds the answer actually does work
+        while(!solutionFound) { // The solver finds the answer within a few more guesses
             StringBuilder inputs = new StringBuilder();
+            int[] colors = nextGuess();
+            int missing = Integer.numberOfTrailingZeros(~pegsEntered);
+            if (missing < PEGS.length) // Start with a peg not entered yet, so that each one is entered at least once
+                colors[0] = missing;
             // Test Case ID: 4
             {
-                char input = PEGS[guess % PEGS.length]; // Rotate the chosen peg, so that each one is chosen at least once.
-                performInput(input);
+                char input = performPegInput(colors[0]);
                 inputs.append(input);
-                String[] output = readAndPrintLines();
-                test("Test 4", output.length > 0 && output[0].startsWith("Color of peg 2"));
+                expectLine("Test 4", "Color of peg 2");
             }
 
             // Test Case ID: 5
             for (int j = 2; j <= 4; j++) {
-                char input = inputRandomPeg();
+                char input = performPegInput(colors[j - 1]);
                 inputs.append(' ').append(input);
-                String[] output = readAndPrintLines();
 
                 String description = "Test 5 (step " + j + ")";
                 if (j < 4)
-                    test(description, output.length > 0 && output[0].startsWith("Color of peg " + (j + 1)));
-                else {
-                    test(description, output.length > 4 &&
-                            output[1].contains("Your guess: "+inputs.toString()) &&
-                            output[3].matches("\\s*Your hits: [Hhm] [Hhm] [Hhm] [Hhm].*"));
-
-                    if (!output[4].startsWith("Would you like")) {
-                        solutionFound = true;
-                        Matcher matcher = Pattern.compile("It took you (\\d+) guesses.").matcher(output[5]);
-                        test("Test 5b (step 4)", matcher.matches());
-
-                        // Extra test case? Check if number of guesses is correct?
-                        // int guesses = Integer.parseInt(matcher.group(1));
-                        // test("...", guesses == guess + 1)
-                    }
-                }
+                    expectLine(description, "Color of peg " + (j + 1));
+                else
+                    solutionFound = testGuessResult(description, "Your guess: " + inputs, colors, guess + 1);
             }
 
             if (!solutionFound) {
@@ -225,11 +285,9 @@ public class MasterMindTest extends BlackBox {
      */
     protected void inputTest(int test, char input, String msg) throws ProgramTerminatedException {
         performInput('q');
-        String[] output = readAndPrintLines();
-        test("Test 10", output.length > 0 && output[0].startsWith("Error in reading"));
+        expectLine("Test 10", "Error in reading");
         performInput(input);
-        output = readAndPrintLines();
-        test("Test " + test, output.length > 0 && output[0].startsWith(msg));
+        expectLine("Test " + test, msg);
     }
 
     // This is where the tests go.
@@ -261,35 +319,62 @@ public class MasterMindTest extends BlackBox {
     }
 
     /**
-     * Main entry point for testing.
+     * Performs test runs until one of them has found the solution.
      *
+     * @param name session name used to prefix progress messages; empty for none
+     * @param seed seed of the first run; the seeds of later runs are derived from it
      * @param args program arguments
+     * @return the pass/fail counters of this session
      * @throws IOException
      */
-    public static void main(String[] args) throws IOException {
-        MasterMindTest test = new MasterMindTest();
-        int testsPassed = 0;
-        int testsFailed = 0;
-        int runs = 0;
-        int crashes = 0;
+    static SessionResult runUntilSolved(String name, long seed, String[] args) throws IOException {
+        return runUntilSolved(name, seed, args, new MasterMindTest());
+    }
+
+    /**
+     * Performs test runs with the given test until one of them has found the solution.
+     *
+     * @param name session name used to prefix progress messages; empty for none
+     * @param seed seed of the first run; the seeds of later runs are derived from it
+     * @param args program arguments
+     * @param test the test to run
+     * @return the pass/fail counters of this session
+     * @throws IOException
+     */
+    static SessionResult runUntilSolved(String name, long seed, String[] args, MasterMindTest test) throws IOException {
+        String prefix = name.isEmpty() ? "" : "[" + name + "] ";
+        SessionResult result = new SessionResult(name);
         do {
-            runs++;
+            result.runs++;
 
-            System.err.printf("Run %d:%n", runs);
+            test.setSeed(seed);
+            seed = nextSeed(seed);
+            System.err.printf("%sRun %d (seed %d):%n", prefix, result.runs, test.getSeed());
             try {
                 test.run(args);
-                System.err.println("  Finished successfully.");
+                System.err.println(prefix + "  Finished successfully.");
             } catch (ProgramTerminatedException e) {
-                crashes += 1;
-                System.err.println("  Crashed with exception: " + e.getCause());
+                result.crashes += 1;
+                System.err.println(prefix + "  Crashed with exception: " + e.getCause());
             }
 
-            testsPassed += test.getTestsPassed();
-            testsFailed += test.getTestsFailed();
+            result.testsPassed += test.getTestsPassed();
+            result.testsFailed += test.getTestsFailed();
         } while(!test.solutionFound);
 
-        System.err.printf("Runs performed: %d; runs crashed: %d.%n", runs, crashes);
-        System.err.printf("Tests performed: %d; tests failed: %d.%n", testsPassed + testsFailed, testsFailed);
+        return result;
+    }
+
+    /**
+     * Main entry point for testing.
+     *
+     * @param args program arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        BlackBox.startMetricsReporting();
+        runUntilSolved("", BlackBox.initialSeed(0), args).print();
+        BlackBox.printMetrics();
     }
 
 }
@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import mastermind.session.SessionEngine;
+import mastermind.session.VirtualThreads;
+
+/**
+ * Runs several MasterMind test sessions concurrently within a single JVM.
+ *
+ * Every session has its own program instance, its own standard streams (see {@link mastermind.stdio.StdioRouter})
+ * and its own pass/fail counters. With {@code -Dblackbox.virtual=true}, every session and its program run on virtual
+ * threads, so that thousands of sessions can run at the same time. With {@code -Dblackbox.virtual=require}, the run
+ * fails unless every session and its program have actually run on virtual threads.
+ */
+public class ParallelMasterMindTest {
+
+    private static final int THREADS  = Integer.parseInt(System.getProperty("blackbox.threads",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+    private static final int SESSIONS = Integer.parseInt(System.getProperty("blackbox.sessions", String.valueOf(THREADS)));
+
+    /**
+     * Main entry point for parallel testing.
+     *
+     * @param args program arguments
+     * @throws InterruptedException
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final AtomicInteger virtual = new AtomicInteger(); // Sessions whose driver and program ran on virtual threads
+        BlackBox.startMetricsReporting();
+        SessionEngine.reserve(Math.min(THREADS, SESSIONS)); // A program thread for every driver
+        ExecutorService executor = VirtualThreads.isEnabled()
+                ? VirtualThreads.newPerTaskExecutor() : Executors.newFixedThreadPool(THREADS);
+        List<Future<SessionResult>> futures = new ArrayList<>();
+        for (int i = 1; i <= SESSIONS; i++) {
+            final String name = "Session " + i;
+            final long seed = BlackBox.initialSeed(i - 1);
+            futures.add(executor.submit(new Callable<SessionResult>() {
+                @Override
+                public SessionResult call() throws IOException {
+                    final boolean[] onVirtual = { VirtualThreads.isVirtual(Thread.currentThread()) };
+                    SessionResult result = MasterMindTest.runUntilSolved(name, seed, args, new MasterMindTest() {
+                        @Override
+                        protected void runProgram(String[] args) throws Exception {
+                            onVirtual[0] &= VirtualThreads.isVirtual(Thread.currentThread());
+                            super.runProgram(args);
+                        }
+                    });
+                    if (onVirtual[0])
+                        virtual.incrementAndGet();
+                    return result;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        SessionResult total = new SessionResult("Total");
+        for (Future<SessionResult> future : futures) {
+            try {
+                SessionResult result = future.get();
+                result.print();
+                total.add(result);
+            } catch (ExecutionException e) {
+                System.err.println("Session failed with exception: " + e.getCause());
+            }
+        }
+        total.print();
+        BlackBox.printMetrics();
+
+        if (VirtualThreads.isEnabled())
+            System.err.printf("Sessions on virtual threads: %d of %d%n", virtual.get(), SESSIONS);
+        if (VirtualThreads.isRequired() && virtual.get() < SESSIONS)
+            System.exit(1);
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Pass/fail counters of a single test session.
+ */
+public class SessionResult {
+
+    private final String name;
+
+    int runs, crashes;
+    int testsPassed, testsFailed;
+
+    public SessionResult(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds the counters of another session to this one.
+     *
+     * @param other session result to add
+     */
+    public void add(SessionResult other) {
+        runs += other.runs;
+        crashes += other.crashes;
+        testsPassed += other.testsPassed;
+        testsFailed += other.testsFailed;
+    }
+
+    /**
+     * Prints the summary of this session to stderr.
+     */
+    public void print() {
+        String prefix = name.isEmpty() ? "" : name + ": ";
+        System.err.printf("%sRuns performed: %d; runs crashed: %d.%n", prefix, runs, crashes);
+        System.err.printf("%sTests performed: %d; tests failed: %d.%n", prefix, testsPassed + testsFailed, testsFailed);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public int getCrashes() {
+        return crashes;
+    }
+
+    public int getTestsPassed() {
+        return testsPassed;
+    }
+
+    public int getTestsFailed() {
+        return testsFailed;
+    }
+
+}
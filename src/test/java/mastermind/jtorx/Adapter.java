@@ -1,218 +1,322 @@
 package mastermind.jtorx;
 
 import java.io.*;
-import java.util.*;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import mastermind.log.Log;
+import mastermind.metrics.LatencyHistogram;
+import mastermind.metrics.Metrics;
+import mastermind.metrics.TimeoutModel;
 
 public abstract class Adapter {
 
-    private volatile Thread thread;
-    private PrintWriter writer;
-    private Process process;
+    private static final boolean IN_PROCESS = Boolean.parseBoolean(System.getProperty("jtorx.inprocess", "false"));
+    private static final int IO_THREADS = Integer.parseInt(System.getProperty("jtorx.iothreads", "0"));
+    private static final boolean QUIESCENCE_PROBE = Boolean.parseBoolean(System.getProperty("jtorx.probe", "true"));
+    private static final boolean PIPELINED = Boolean.parseBoolean(System.getProperty("jtorx.pipelined", "false"));
+    private static final long METRICS_INTERVAL = Long.parseLong(System.getProperty("jtorx.metrics", "0"));
+    private static final String TIMEOUTS = System.getProperty("jtorx.timeouts"); // File of learned timeouts, if any
+    private static final String REPLY_END = " " + System.getProperty("line.separator"); // Workaround for a JTorX bug
 
-    private final BlockingQueue<String> outputEvents = new LinkedBlockingQueue<>();
+    private static final Log log = Log.err();
+
+    private final Writer replies = new BufferedWriter(new OutputStreamWriter(System.out));
+    private char[] replyChars = new char[256];
+
+    private ProcessPool pool;
+    private OutputMultiplexer multiplexer;
+    private ClassifierEngine classifierEngine;
+
+    private final ConcurrentMap<String, AdapterSession> sessions = new ConcurrentHashMap<>();
+    private final Map<CommandTokenizer.Command, LatencyHistogram> commandLatencies =
+            new EnumMap<>(CommandTokenizer.Command.class);
     private final long timeout;
+    private final TimeoutModel timeouts;
+    private final int poolSize;
 
     public Adapter(long timeout) {
+        this(timeout, 0);
+    }
+
+    /**
+     * @param timeout time to wait for output before reporting quiescence, in milliseconds; with
+     *                {@code -Djtorx.timeouts=<file>}, only until a timeout has been learned for the step
+     * @param poolSize number of idle SUT processes to launch in advance; 0 to launch them on demand
+     */
+    public Adapter(long timeout, int poolSize) {
         this.timeout = timeout;
+        this.timeouts = TIMEOUTS != null ? new TimeoutModel(new File(TIMEOUTS), timeout) : null;
+        this.poolSize = poolSize;
+        for (CommandTokenizer.Command command : CommandTokenizer.Command.values())
+            commandLatencies.put(command, Metrics.getShared().histogram("command." + command));
     }
 
     public void run() {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        LineReader reader = new LineReader(System.in);
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        classifierEngine = new ClassifierEngine(getOutputClassifiers());
+        if (poolSize > 0 && !IN_PROCESS)
+            pool = new ProcessPool(createProcessBuilder(), poolSize);
+        if (IO_THREADS > 0)
+            multiplexer = new OutputMultiplexer(IO_THREADS);
+        Metrics.getShared().startReporting(METRICS_INTERVAL, metricsReporter());
         try {
-            String result;
+            boolean quit;
             do {
-                String line = reader.readLine();
-                if (line == null)
+                int length = reader.readLine();
+                if (length == -1)
                     break;
 
-                result = parseCommandLine(line);
-                System.out.println(result + " "); // Workaround for a JTorX bug
-            } while (!result.equals("A_QUIT"));
-
-            if (thread != null) {
-                thread.interrupt();
-                process.destroy();
+                quit = parseCommandLine(tokenizer, reader.getLine(), length);
+            } while (!quit);
+
+            for (AdapterSession session : sessions.values())
+                session.close();
+            if (pool != null)
+                pool.close();
+            if (multiplexer != null)
+                multiplexer.close();
+
+            Metrics.getShared().stopReporting();
+            Metrics.getShared().report(metricsReporter());
+            if (timeouts != null)
+                timeouts.report(metricsReporter());
+            reply("A_QUIT");
+            synchronized (replies) {
+                replies.flush();
             }
         } catch (IOException e) {
-            System.err.println("I/O exception: " + e.getMessage());
+            log.error("I/O exception: " + e.getMessage());
             System.exit(1);
         } catch (Exception e) {
-            System.err.println("Unexpected exception: " + e);
-            e.printStackTrace();
+            log.error("Unexpected exception: " + e, e);
             System.exit(1);
         }
     }
 
-    private String parseCommandLine(String line) {
-        String[] commandAndArgs = line.split("[\t ]+", 2);
-
-        String command = commandAndArgs[0];
-        String[] unparsedArgs = commandAndArgs.length > 1 ? commandAndArgs[1].split("\t") : new String[0];
-
-        Map<String, String> arguments = new HashMap<>();
-        for (String unparsedArg : unparsedArgs) {
-            if (unparsedArg.indexOf('=') == -1)
-                return "A_ERROR UnknownCommand Unable to parse arguments";
-
-            String[] argParts = unparsedArg.split("=", 2);
-            if (argParts.length < 2)
-                return "A_ERROR UnknownCommand Unable to parse arguments";
-
-            arguments.put(argParts[0], argParts[1]);
-        }
-
-        try {
-            switch (command) {
-                case "C_IOKIND":
-                {
-                    String kind = arguments.get("iokind");
-
-                    StringBuilder builder = new StringBuilder();
-                    builder.append("A_IOKIND");
-                    if (kind == null)
-                        builder.append(" iokind=").append(outputEvents.isEmpty() ? "input" : "output");
-                    else if (kind.equals("input") || kind.equals("output"))
-                        builder.append(" iokind=").append(kind);
-                    else
-                        return "A_ERROR UnknownIOKind " + kind;
-
-                    if (arguments.containsKey("channel"))
-                        builder.append("\tchannel=").append(arguments.get("channel"));
-
-                    return builder.toString();
-                }
-                case "C_INPUT":
-                {
-                    String event = arguments.get("event");
-                    if (event == null)
-                        return "A_ERROR MissingArgument event";
-
-                    String error = performInput(event);
-                    if (error != null)
-                        return error;
-
-                    StringBuilder builder = new StringBuilder();
-                    builder.append("A_INPUT event=").append(event);
-                    if (arguments.containsKey("channel"))
-                        builder.append("\tchannel=").append(arguments.get("channel"));
-
-                    return builder.toString();
-                }
-                case "C_OUTPUT":
-                {
-                    String event = outputEvents.poll(timeout, TimeUnit.MILLISECONDS);
+    /**
+     * @return a reporter that sends every line of a metrics report as an {@code A_LOG} reply
+     */
+    private Metrics.Reporter metricsReporter() {
+        return new Metrics.Reporter() {
+            @Override
+            public void report(String line) {
+                reply("A_LOG Metrics: " + line);
+            }
+        };
+    }
 
-                    StringBuilder builder = new StringBuilder();
-                    builder.append("A_OUTPUT ").append(event == null ? "suspension=1" : "event=" + event);
-                    if (arguments.containsKey("channel"))
-                        builder.append("\tchannel=").append(arguments.get("channel"));
+    /**
+     * Writes a reply that does not belong to a session, and flushes it.
+     *
+     * @param result reply
+     */
+    private void reply(CharSequence result) {
+        reply(result, null);
+    }
 
-                    return builder.toString();
-                }
-                case "C_QUIT":
-                    return "A_QUIT";
-                default:
-                    return "A_ERROR UnknownCommand Unknown command: " + command;
+    /**
+     * Writes a reply. In pipelined mode, the replies are only flushed once no more commands of the session that is
+     * answered are pending, so that a command that waits for output on one channel does not hold back the replies of
+     * other channels. The last reply of every session thus flushes all replies written before it.
+     *
+     * @param result reply
+     * @param session session of the command that is answered, or {@code null}
+     */
+    private void reply(CharSequence result, AdapterSession session) {
+        synchronized (replies) {
+            try {
+                if (replyChars.length < result.length())
+                    replyChars = new char[result.length() * 2];
+                for (int i = 0; i < result.length(); i++)
+                    replyChars[i] = result.charAt(i);
+
+                replies.write(replyChars, 0, result.length());
+                replies.write(REPLY_END);
+                if (!PIPELINED || session == null || !session.hasPendingCommands())
+                    replies.flush();
+            } catch (IOException e) {
+                log.error("I/O exception: " + e.getMessage());
+                System.exit(1);
             }
-        } catch (Exception e) {
-            System.out.println("A_ERROR InternalError " + e);
-            throw new RuntimeException(e);
         }
     }
 
-    private void startSUT() throws IOException {
-        assert thread == null;
+    /**
+     * Parses a command and queues it on the session of its channel.
+     *
+     * @param tokenizer tokenizer to use
+     * @param line buffer containing the command line
+     * @param length length of the command line
+     * @return whether the adapter should quit
+     */
+    private boolean parseCommandLine(CommandTokenizer tokenizer, char[] line, int length) {
+        if (!tokenizer.tokenize(line, length)) {
+            reply("A_ERROR UnknownCommand Unable to parse arguments");
+            return false;
+        }
 
-        ProcessBuilder builder = new ProcessBuilder("java");
-        for (String arg : getJavaArguments())
-            builder.command().add(arg);
+        final CommandTokenizer.Command command = tokenizer.getCommand();
+        if (command == CommandTokenizer.Command.C_QUIT)
+            return true;
 
-        process = builder.start();
+        final String commandName = command == CommandTokenizer.Command.UNKNOWN ? tokenizer.getCommandName() : null;
+        final String channel = tokenizer.get("channel");
+        final String argument = tokenizer.get(command == CommandTokenizer.Command.C_INPUT ? "event" : "iokind");
 
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        writer = new PrintWriter(process.getOutputStream(), true);
-        thread = new Thread() {
+        final AdapterSession session = getSession(channel);
+        session.submit(new Runnable() {
             @Override
             public void run() {
                 try {
-                    try {
-                        StringBuilder builder = new StringBuilder();
-                        while (!Thread.interrupted()) {
-                            long start = System.currentTimeMillis();
-                            int c = 0;
-                            do {
-                                if (reader.ready()) {
-                                    c = reader.read();
-                                    if (c == -1)
-                                        break;
-                                    if (c != '\r')
-                                        builder.append((char) c);
-                                } else
-                                    Thread.yield();
-                            } while (!Thread.interrupted() && (System.currentTimeMillis() < start + timeout / 10L || builder.length() == 0) && c != '\n');
-
-                            classifyOutput(builder);
-
-                            if (c == -1)
-                                break;
-                        }
-                    } catch (IOException ignored) {
-
-                    }
-
-                    try {
-                        outputEvents.add(process.exitValue() == 0 ? "!Stopped" : "!Crashed");
-                    } catch (IllegalThreadStateException ignored) {
-                        process.destroy();
-                        outputEvents.add("!Terminated");
-                    }
-                } finally {
-                    thread = null;
+                    long start = System.nanoTime();
+                    CharSequence result = performCommand(session, command, commandName, argument, channel);
+                    commandLatencies.get(command).recordSince(start);
+                    session.complete();
+                    reply(result, session);
+                } catch (Exception e) {
+                    session.complete();
+                    reply("A_ERROR InternalError " + e); // Flushed, as the adapter exits
+                    log.error("Unexpected exception: " + e, e);
+                    System.exit(1);
                 }
             }
-        };
-        thread.start();
-        outputEvents.add("!Started");
+        });
+
+        return false;
     }
 
+    private AdapterSession getSession(String channel) {
+        String key = channel == null ? "" : channel;
+        AdapterSession session = sessions.get(key);
+        if (session == null) {
+            AdapterSession created = new AdapterSession(this, key);
+            session = sessions.putIfAbsent(key, created);
+            if (session == null)
+                session = created;
+        }
 
+        return session;
+    }
 
-    private String performInput(String inputLabel) throws IOException {
-        if (inputLabel.equals("?Start")) {
-            if (thread != null)
-                return "A_INPUT_ERROR";
-            startSUT();
-        } else {
-            String input = getInputFromLabel(inputLabel);
-            if (input == null)
-                return "A_ERROR ParseErrorEvent Unknown event: " + inputLabel;
+    /**
+     * Performs a command on a session.
+     *
+     * @param session session of the command's channel
+     * @param command command to perform
+     * @param commandName name of an unknown command
+     * @param argument the {@code event} argument of C_INPUT, or the {@code iokind} argument of other commands
+     * @param channel channel argument, or {@code null}
+     * @return the reply; only valid until the next command of the session
+     * @throws Exception
+     */
+    private CharSequence performCommand(AdapterSession session, CommandTokenizer.Command command, String commandName,
+                                        String argument, String channel) throws Exception {
+        StringBuilder builder = session.getReplyBuilder();
+        switch (command) {
+            case C_IOKIND:
+            {
+                builder.append("A_IOKIND");
+                if (argument == null)
+                    builder.append(" iokind=").append(session.hasOutput() ? "output" : "input");
+                else if (argument.equals("input") || argument.equals("output"))
+                    builder.append(" iokind=").append(argument);
+                else
+                    return "A_ERROR UnknownIOKind " + argument;
+                break;
+            }
+            case C_INPUT:
+            {
+                if (argument == null)
+                    return "A_ERROR MissingArgument event";
 
-            if (thread == null)
-                return "A_INPUT_ERROR";
+                String error = session.performInput(argument);
+                if (error != null)
+                    return error;
 
-            writer.println(input);
+                builder.append("A_INPUT event=").append(argument);
+                break;
+            }
+            case C_OUTPUT:
+            {
+                String event = timeouts != null ? session.pollOutput(timeouts) : session.pollOutput(timeout);
+
+                builder.append("A_OUTPUT ");
+                if (event == null)
+                    builder.append("suspension=1");
+                else
+                    builder.append("event=").append(event);
+                break;
+            }
+            default:
+                return "A_ERROR UnknownCommand Unknown command: " + commandName;
         }
 
-        return null;
+        if (channel != null)
+            builder.append("\tchannel=").append(channel);
+
+        return builder;
     }
 
-    private void classifyOutput(StringBuilder rawOutput) {
-        for (OutputClassifier c : getOutputClassifiers()) {
-            int length = c.run(rawOutput);
-            if (length >= 0) {
-                System.err.println(rawOutput.subSequence(0, length));
-                rawOutput.delete(0, length);
-                outputEvents.add(c.getLabel());
-                break;
-            }
-        }
+    private ProcessBuilder createProcessBuilder() {
+        ProcessBuilder builder = new ProcessBuilder("java");
+        for (String arg : getJavaArguments())
+            builder.command().add(arg);
+
+        return builder;
+    }
+
+    /**
+     * Launches a new instance of the SUT according to the configured hosting mode.
+     *
+     * @return the SUT
+     * @throws IOException if the SUT could not be launched
+     */
+    Process launchSUT() throws IOException {
+        if (IN_PROCESS)
+            return new InProcessSUT(getMainClass(), new String[0]);
+
+        return pool != null ? pool.take() : createProcessBuilder().start();
+    }
+
+    /**
+     * Creates the output side of a SUT. An incomplete line is classified after a tenth of the timeout without output,
+     * or as soon as the probe finds the SUT waiting for input.
+     *
+     * @param process the SUT
+     * @param outputEvents queue that receives the output events
+     * @param probe probe of the SUT, or {@code null}
+     * @return the output
+     */
+    SUTOutput createOutput(Process process, BlockingQueue<String> outputEvents, InputProbe probe) {
+        return new SUTOutput(process, classifierEngine, outputEvents, probe, timeout / 10, timeout);
+    }
+
+    /**
+     * Creates a probe that detects when the SUT is waiting for input, if enabled and supported.
+     *
+     * @param process the SUT
+     * @return the probe, or {@code null}
+     */
+    InputProbe createProbe(Process process) {
+        if (!QUIESCENCE_PROBE)
+            return null;
+        if (process instanceof InputProbe)
+            return (InputProbe) process;
+
+        return ProcInputProbe.create(process);
+    }
+
+    OutputMultiplexer getMultiplexer() {
+        return multiplexer;
     }
 
     protected abstract String getInputFromLabel(String label);
     protected abstract OutputClassifier[] getOutputClassifiers();
     protected abstract String[] getJavaArguments();
+    protected abstract String getMainClass();
 
 }
@@ -0,0 +1,213 @@
+package mastermind.jtorx;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import mastermind.metrics.TimeoutModel;
+
+/**
+ * A single SUT session of an {@link Adapter}, identified by its JTorX channel.
+ *
+ * Every session has its own SUT, its own output events and its own command thread, so commands for different channels
+ * are handled concurrently while the commands of one channel are handled in order.
+ */
+class AdapterSession {
+
+    private static final long PROBE_INTERVAL_MICROS = 500;
+
+    private final Adapter adapter;
+    private final String channel;
+    private final BlockingQueue<String> outputEvents = new LinkedBlockingQueue<>();
+    private final ExecutorService executor;
+    private final StringBuilder replyBuilder = new StringBuilder();
+    private final AtomicInteger pendingCommands = new AtomicInteger();
+
+    private Thread thread;
+    private PrintWriter writer;
+    private volatile SUTOutput output;
+    private InputProbe probe;
+    private String step = "?Start"; // The latest input or output event, for learning timeouts
+    private boolean timedOut; // Whether the latest poll has timed out while the SUT was not found waiting for input
+
+    AdapterSession(Adapter adapter, String channel) {
+        this.adapter = adapter;
+        this.channel = channel;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "session-" + AdapterSession.this.channel);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues a command of this session.
+     *
+     * @param command command to perform
+     */
+    void submit(Runnable command) {
+        pendingCommands.incrementAndGet();
+        executor.execute(command);
+    }
+
+    /**
+     * Must be called by every command of this session once it has been performed, before it replies.
+     */
+    void complete() {
+        pendingCommands.decrementAndGet();
+    }
+
+    /**
+     * @return whether commands of this session are queued or being performed
+     */
+    boolean hasPendingCommands() {
+        return pendingCommands.get() > 0;
+    }
+
+    /**
+     * Must only be used by the commands of this session.
+     *
+     * @return an empty builder for the reply to a command
+     */
+    StringBuilder getReplyBuilder() {
+        replyBuilder.setLength(0);
+        return replyBuilder;
+    }
+
+    String getChannel() {
+        return channel;
+    }
+
+    boolean hasOutput() {
+        return !outputEvents.isEmpty();
+    }
+
+    /**
+     * Waits for the next output event.
+     *
+     * If the SUT can be probed, quiescence is reported as soon as the SUT has been found blocked waiting for input,
+     * with no output left in its pipe and all output read classified, on two consecutive probes. Otherwise it is
+     * reported after the timeout.
+     *
+     * @param timeout time to wait, in milliseconds
+     * @return the output event, or {@code null} in case of quiescence
+     * @throws InterruptedException if interrupted while waiting
+     */
+    String pollOutput(long timeout) throws InterruptedException {
+        SUTOutput output = this.output;
+        timedOut = false; // Unknown without a probe, as quiescence is only ever reported by timing out then
+        if (probe == null || output == null || output.isFinished())
+            return outputEvents.poll(timeout, TimeUnit.MILLISECONDS);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long interval = TimeUnit.MICROSECONDS.toNanos(PROBE_INTERVAL_MICROS);
+        boolean quiescent = false;
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            String event = outputEvents.poll(Math.min(interval, Math.max(remaining, 0)), TimeUnit.NANOSECONDS);
+            if (event != null || remaining <= 0) {
+                timedOut = event == null && !quiescent;
+                return event;
+            }
+
+            // The SUT must be blocked before checking the output, as it cannot produce any more output after that
+            boolean blocked = probe.isAwaitingInput() && !probe.hasUnreadOutput() &&
+                    output.isDrained() && outputEvents.isEmpty();
+            if (blocked && quiescent)
+                return null;
+            quiescent = blocked;
+        }
+    }
+
+    /**
+     * Waits for the next output event no longer than the timeout model has learned to be needed after the latest
+     * event, and records the time the event took in the model. If the wait times out while the SUT is not found
+     * waiting for input, the timeout is recorded instead, so that the model learns longer timeouts again.
+     *
+     * @param timeouts the timeout model
+     * @return the output event, or {@code null} in case of quiescence
+     * @throws InterruptedException if interrupted while waiting
+     */
+    String pollOutput(TimeoutModel timeouts) throws InterruptedException {
+        long start = System.nanoTime();
+        String event = pollOutput(timeouts.getTimeout(step));
+        if (event != null) {
+            timeouts.record(step, System.nanoTime() - start);
+            step = event;
+        } else if (timedOut) {
+            timeouts.recordTimeout(step);
+        }
+        return event;
+    }
+
+    /**
+     * Performs the input corresponding to the given label.
+     *
+     * @param inputLabel input label
+     * @return an error reply, or {@code null} on success
+     * @throws IOException if the SUT could not be started
+     */
+    String performInput(String inputLabel) throws IOException {
+        step = inputLabel;
+        if (inputLabel.equals("?Start")) {
+            if (isRunning())
+                return "A_INPUT_ERROR";
+            startSUT();
+        } else {
+            String input = adapter.getInputFromLabel(inputLabel);
+            if (input == null)
+                return "A_ERROR ParseErrorEvent Unknown event: " + inputLabel;
+
+            if (!isRunning())
+                return "A_INPUT_ERROR";
+
+            output.markInput();
+            writer.println(input);
+        }
+
+        return null;
+    }
+
+    private void startSUT() throws IOException {
+        assert !isRunning();
+
+        Process process = adapter.launchSUT();
+        writer = new PrintWriter(process.getOutputStream(), true);
+        probe = adapter.createProbe(process);
+        output = adapter.createOutput(process, outputEvents, probe);
+        outputEvents.add("!Started"); // Before any output of a pre-launched SUT can be classified
+
+        OutputMultiplexer multiplexer = adapter.getMultiplexer();
+        if (multiplexer != null) {
+            thread = null;
+            multiplexer.register(output);
+        } else {
+            thread = new Thread(output, "output-" + channel);
+            thread.start();
+        }
+    }
+
+    private boolean isRunning() {
+        return output != null && !output.isFinished();
+    }
+
+    /**
+     * Waits for all queued commands, then stops the SUT.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        if (isRunning()) {
+            if (thread != null)
+                thread.interrupt();
+            output.getProcess().destroy();
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package mastermind.jtorx;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A growable ring buffer of characters that presents its unconsumed contents as a {@link CharSequence}.
+ *
+ * Characters are read in bulk directly into the buffer and consuming characters only moves the start offset, so no
+ * characters are copied after they have been read (unless the buffer has to grow).
+ */
+public class CharRingBuffer implements CharSequence {
+
+    private char[] buffer;
+    private int mask;
+    private int start;
+    private int length;
+
+    /**
+     * @param capacity initial capacity; rounded up to a power of two
+     */
+    public CharRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        buffer = new char[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Performs a single bulk read from the given reader into the free space of the buffer. Carriage returns are
+     * dropped. Blocks until at least one character is available.
+     *
+     * @param reader reader to read from
+     * @return the number of characters added to the buffer, or -1 at the end of the stream
+     * @throws IOException if reading fails
+     */
+    public int readFrom(Reader reader) throws IOException {
+        if (length == buffer.length)
+            grow();
+
+        int end = (start + length) & mask;
+        int free = Math.min(buffer.length - length, buffer.length - end);
+        int count = reader.read(buffer, end, free);
+        if (count <= 0)
+            return count;
+
+        int kept = end;
+        for (int i = end; i < end + count; i++) {
+            if (buffer[i] != '\r')
+                buffer[kept++] = buffer[i];
+        }
+
+        length += kept - end;
+        return kept - end;
+    }
+
+    /**
+     * Removes characters from the start of the buffer.
+     *
+     * @param count number of characters to remove
+     */
+    public void consume(int count) {
+        if (count < 0 || count > length)
+            throw new IndexOutOfBoundsException("count: " + count);
+
+        start = (start + count) & mask;
+        length -= count;
+    }
+
+    private void grow() {
+        char[] grown = new char[buffer.length * 2];
+        for (int i = 0; i < length; i++)
+            grown[i] = charAt(i);
+
+        buffer = grown;
+        mask = grown.length - 1;
+        start = 0;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index: " + index);
+
+        return buffer[(start + index) & mask];
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to)
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to);
+
+        StringBuilder builder = new StringBuilder(to - from);
+        for (int i = from; i < to; i++)
+            builder.append(buffer[(start + i) & mask]);
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns the first characters of the buffer as a sequence of their own, without copying them. The sequence is only
+     * valid until the buffer is modified.
+     *
+     * @param end number of characters
+     * @return the characters
+     */
+    public CharSequence prefix(final int end) {
+        if (end < 0 || end > length)
+            throw new IndexOutOfBoundsException("end: " + end);
+
+        return new CharSequence() {
+            @Override
+            public int length() {
+                return end;
+            }
+
+            @Override
+            public char charAt(int index) {
+                if (index >= end)
+                    throw new IndexOutOfBoundsException("index: " + index);
+
+                return CharRingBuffer.this.charAt(index);
+            }
+
+            @Override
+            public CharSequence subSequence(int from, int to) {
+                if (to > end)
+                    throw new IndexOutOfBoundsException("to: " + to);
+
+                return CharRingBuffer.this.subSequence(from, to);
+            }
+
+            @Override
+            public String toString() {
+                return CharRingBuffer.this.subSequence(0, end).toString();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+}
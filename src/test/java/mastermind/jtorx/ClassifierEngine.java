@@ -0,0 +1,225 @@
+package mastermind.jtorx;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies output using a set of output classifiers in a single scan.
+ *
+ * The patterns of the classifiers are merged into one alternation per possible first character of the output. Since
+ * an alternation tries its alternatives from left to right, the result is the same as trying every classifier in
+ * order, while classifiers that cannot match because of their literal first character are not tried at all.
+ */
+public class ClassifierEngine {
+
+    private static final int DISPATCH_SIZE = 128;
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+    private final Dispatch[] dispatch = new Dispatch[DISPATCH_SIZE];
+    private final Dispatch fallback;
+
+    /**
+     * Compiles the given classifiers. Classifiers are tried in the given order.
+     *
+     * @param classifiers output classifiers
+     * @throws IllegalArgumentException if a pattern contains back references
+     */
+    public ClassifierEngine(OutputClassifier... classifiers) {
+        int[] firstChars = new int[classifiers.length];
+        for (int i = 0; i < classifiers.length; i++) {
+            Pattern pattern = classifiers[i].getPattern();
+            if (BACK_REFERENCE.matcher(pattern.pattern()).find())
+                throw new IllegalArgumentException("Back references are not supported: " + classifiers[i].getLabel());
+            firstChars[i] = pattern.flags() == 0 ? literalFirstChar(pattern.pattern()) : -1;
+        }
+
+        Map<List<OutputClassifier>, Dispatch> compiled = new HashMap<>();
+        for (int c = 0; c < DISPATCH_SIZE; c++)
+            dispatch[c] = compile(classifiers, firstChars, c, compiled);
+        fallback = compile(classifiers, firstChars, -1, compiled);
+    }
+
+    /**
+     * Classifies the start of the given output.
+     *
+     * @param output raw output
+     * @return the classification, or {@code null} if no classifier matches
+     */
+    public Classification classify(CharSequence output) {
+        if (output.length() == 0)
+            return null;
+
+        char first = output.charAt(0);
+        Dispatch candidates = first < DISPATCH_SIZE ? dispatch[first] : fallback;
+        if (candidates == null)
+            return null;
+
+        Matcher matcher = candidates.pattern.matcher(output);
+        if (!matcher.lookingAt())
+            return null;
+
+        for (int i = 0; i < candidates.classifiers.length; i++) {
+            int group = candidates.groups[i];
+            if (matcher.start(group) != -1) {
+                OutputClassifier classifier = candidates.classifiers[i];
+                classifier.runTestCases(matcher, group);
+
+                String[] groups = new String[candidates.groupCounts[i]];
+                for (int j = 0; j < groups.length; j++)
+                    groups[j] = matcher.group(group + j + 1);
+
+                return new Classification(classifier, matcher.end(), groups);
+            }
+        }
+
+        throw new AssertionError("Matched without a matching alternative");
+    }
+
+    private static Dispatch compile(OutputClassifier[] classifiers, int[] firstChars, int c,
+                                    Map<List<OutputClassifier>, Dispatch> compiled) {
+        List<OutputClassifier> candidates = new ArrayList<>();
+        for (int i = 0; i < classifiers.length; i++) {
+            if (firstChars[i] == -1 || firstChars[i] == c)
+                candidates.add(classifiers[i]);
+        }
+
+        if (candidates.isEmpty())
+            return null;
+
+        Dispatch result = compiled.get(candidates);
+        if (result == null) {
+            result = new Dispatch(candidates);
+            compiled.put(candidates, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Determines the character every match of the given pattern starts with.
+     *
+     * @param regex pattern source
+     * @return the first character, or -1 if it is not a single literal character
+     */
+    static int literalFirstChar(String regex) {
+        if (regex.isEmpty() || hasTopLevelAlternation(regex))
+            return -1;
+
+        int c = regex.charAt(0);
+        int next = 1;
+        if (c == '\\') {
+            if (regex.length() < 2)
+                return -1;
+            char escaped = regex.charAt(1);
+            if (escaped == 'n')
+                c = '\n';
+            else if (escaped == 't')
+                c = '\t';
+            else if (escaped == 'r')
+                c = '\r';
+            else if (!Character.isLetterOrDigit(escaped))
+                c = escaped;
+            else
+                return -1;
+            next = 2;
+        } else if (".[]()|^$?*+{}".indexOf(c) >= 0) {
+            return -1;
+        }
+
+        if (next < regex.length() && "?*{".indexOf(regex.charAt(next)) >= 0)
+            return -1;
+
+        return c < DISPATCH_SIZE ? c : -1;
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (inClass)
+                inClass = c != ']';
+            else if (c == '[')
+                inClass = true;
+            else if (c == '(')
+                depth++;
+            else if (c == ')')
+                depth--;
+            else if (c == '|' && depth == 0)
+                return true;
+        }
+
+        return false;
+    }
+
+    private static final class Dispatch {
+        private final OutputClassifier[] classifiers;
+        private final int[] groups;
+        private final int[] groupCounts;
+        private final Pattern pattern;
+
+        private Dispatch(List<OutputClassifier> candidates) {
+            classifiers = candidates.toArray(new OutputClassifier[candidates.size()]);
+            groups = new int[classifiers.length];
+            groupCounts = new int[classifiers.length];
+
+            StringBuilder builder = new StringBuilder();
+            int group = 1;
+            for (int i = 0; i < classifiers.length; i++) {
+                if (i > 0)
+                    builder.append('|');
+                builder.append('(').append(classifiers[i].getPattern().pattern()).append(')');
+                groups[i] = group;
+                groupCounts[i] = classifiers[i].getPattern().matcher("").groupCount();
+                group += 1 + groupCounts[i];
+            }
+            pattern = Pattern.compile(builder.toString());
+        }
+    }
+
+    /**
+     * The winning classifier of a classification and its capture groups.
+     */
+    public static final class Classification {
+        private final OutputClassifier classifier;
+        private final int length;
+        private final String[] groups;
+
+        private Classification(OutputClassifier classifier, int length, String[] groups) {
+            this.classifier = classifier;
+            this.length = length;
+            this.groups = groups;
+        }
+
+        public OutputClassifier getClassifier() {
+            return classifier;
+        }
+
+        public String getLabel() {
+            return classifier.getLabel();
+        }
+
+        /**
+         * @return number of characters consumed by the match
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @param group group number of the classifier's own pattern, starting at 1
+         * @return the captured text, or {@code null} if the group did not participate in the match
+         */
+        public String group(int group) {
+            return groups[group - 1];
+        }
+
+        public int groupCount() {
+            return groups.length;
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package mastermind.jtorx;
+
+import java.util.Arrays;
+
+/**
+ * Tokenizes adapter command lines in place.
+ *
+ * A command line consists of a command, followed by whitespace and a tab-separated list of {@code key=value}
+ * arguments. The tokenizer only records offsets into the line; nothing is allocated until the value of an argument is
+ * requested.
+ */
+final class CommandTokenizer {
+
+    enum Command {
+        C_IOKIND, C_INPUT, C_OUTPUT, C_QUIT, UNKNOWN
+    }
+
+    private static final Command[] COMMANDS = {Command.C_IOKIND, Command.C_INPUT, Command.C_OUTPUT, Command.C_QUIT};
+
+    private char[] line;
+    private int commandEnd;
+    private Command command;
+
+    private int argumentCount;
+    private int[] keyStart = new int[8];
+    private int[] separator = new int[8];
+    private int[] valueEnd = new int[8];
+
+    /**
+     * Tokenizes a command line.
+     *
+     * @param chars buffer containing the line; must not change until the next call
+     * @param length length of the line
+     * @return {@code false} if the arguments could not be parsed
+     */
+    boolean tokenize(char[] chars, int length) {
+        line = chars;
+        argumentCount = 0;
+
+        commandEnd = 0;
+        while (commandEnd < length && chars[commandEnd] != ' ' && chars[commandEnd] != '\t')
+            commandEnd++;
+        command = matchCommand();
+
+        int position = commandEnd;
+        while (position < length && (chars[position] == ' ' || chars[position] == '\t'))
+            position++;
+        if (position == commandEnd)
+            return true;
+
+        while (position < length) {
+            int end = position;
+            int equals = -1;
+            while (end < length && chars[end] != '\t') {
+                if (equals == -1 && chars[end] == '=')
+                    equals = end;
+                end++;
+            }
+
+            if (equals == -1) {
+                if (end == position && isTrailing(end, length))
+                    break;
+                return false;
+            }
+
+            addArgument(position, equals, end);
+            position = end + 1;
+        }
+
+        return true;
+    }
+
+    private boolean isTrailing(int position, int length) {
+        for (int i = position; i < length; i++) {
+            if (line[i] != '\t')
+                return false;
+        }
+
+        return true;
+    }
+
+    private void addArgument(int start, int equals, int end) {
+        if (argumentCount == keyStart.length) {
+            keyStart = Arrays.copyOf(keyStart, argumentCount * 2);
+            separator = Arrays.copyOf(separator, argumentCount * 2);
+            valueEnd = Arrays.copyOf(valueEnd, argumentCount * 2);
+        }
+
+        keyStart[argumentCount] = start;
+        separator[argumentCount] = equals;
+        valueEnd[argumentCount] = end;
+        argumentCount++;
+    }
+
+    private Command matchCommand() {
+        for (Command candidate : COMMANDS) {
+            if (regionEquals(0, commandEnd, candidate.name()))
+                return candidate;
+        }
+
+        return Command.UNKNOWN;
+    }
+
+    private boolean regionEquals(int start, int end, String string) {
+        if (end - start != string.length())
+            return false;
+
+        for (int i = start; i < end; i++) {
+            if (line[i] != string.charAt(i - start))
+                return false;
+        }
+
+        return true;
+    }
+
+    Command getCommand() {
+        return command;
+    }
+
+    String getCommandName() {
+        return new String(line, 0, commandEnd);
+    }
+
+    /**
+     * Looks up the value of an argument. When an argument occurs more than once, the last value is used.
+     *
+     * @param key argument key
+     * @return the value, or {@code null} if there is no such argument
+     */
+    String get(String key) {
+        for (int i = argumentCount - 1; i >= 0; i--) {
+            if (regionEquals(keyStart[i], separator[i], key))
+                return new String(line, separator[i] + 1, valueEnd[i] - separator[i] - 1);
+        }
+
+        return null;
+    }
+
+}
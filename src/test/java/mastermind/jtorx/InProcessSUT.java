@@ -0,0 +1,131 @@
+package mastermind.jtorx;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import mastermind.log.Log;
+import mastermind.stdio.Pipe;
+import mastermind.stdio.StdioRouter;
+
+/**
+ * Runs a program inside the current JVM as if it were a separate process.
+ *
+ * The main class is loaded by a fresh class loader for every instance, so static state never leaks from one instance
+ * to the next. The standard streams of the program are connected to in-memory pipes by {@link StdioRouter}.
+ */
+public class InProcessSUT extends Process implements InputProbe {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final Log log = Log.err();
+
+    private final Pipe stdout = new Pipe(BUFFER_SIZE);
+    private final Pipe stdin = new Pipe(BUFFER_SIZE);
+    private final Thread thread;
+    private volatile int exitValue;
+
+    /**
+     * Loads the given main class and starts running it.
+     *
+     * @param mainClass name of the class containing the main method
+     * @param args program arguments
+     * @throws IOException if the class path is invalid
+     */
+    public InProcessSUT(final String mainClass, final String[] args) throws IOException {
+        StdioRouter.install();
+
+        final PrintStream programStdout = new PrintStream(stdout.getSource(), true);
+
+        final URLClassLoader loader = new URLClassLoader(getClassPath(), ClassLoader.getSystemClassLoader().getParent());
+        thread = new Thread(mainClass) {
+            @Override
+            public void run() {
+                StdioRouter.bind(programStdout, stdin.getSink());
+                try {
+                    Method main = Class.forName(mainClass, true, loader).getMethod("main", String[].class);
+                    main.invoke(null, (Object) args);
+                    exitValue = 0;
+                } catch (InvocationTargetException e) {
+                    log.warn("SUT crashed: " + e.getCause());
+                    exitValue = 1;
+                } catch (ReflectiveOperationException e) {
+                    log.error("Unable to start SUT: " + e);
+                    exitValue = 1;
+                } finally {
+                    programStdout.close();
+                    stdin.closeSink();
+                    try {
+                        loader.close();
+                    } catch (IOException ignored) {
+
+                    }
+                }
+            }
+        };
+        thread.setContextClassLoader(loader);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static URL[] getClassPath() throws MalformedURLException {
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] urls = new URL[entries.length];
+        for (int i = 0; i < entries.length; i++)
+            urls[i] = new File(entries[i]).toURI().toURL();
+
+        return urls;
+    }
+
+    @Override
+    public boolean isAwaitingInput() {
+        return stdin.isAwaitingInput() && thread.isAlive();
+    }
+
+    @Override
+    public boolean hasUnreadOutput() {
+        try {
+            return stdout.getSink().available() > 0; // Does not wait for a blocked reader, which releases the lock
+        } catch (IOException e) {
+            return false; // Closed; nothing can be read anymore
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return stdin.getSource();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return stdout.getSink();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        thread.join();
+        return exitValue;
+    }
+
+    @Override
+    public int exitValue() {
+        if (thread.isAlive())
+            throw new IllegalThreadStateException("SUT has not terminated");
+
+        return exitValue;
+    }
+
+    @Override
+    public void destroy() {
+        thread.interrupt();
+        stdin.closeSource();
+    }
+
+}
@@ -0,0 +1,21 @@
+package mastermind.jtorx;
+
+/**
+ * Tells whether a running SUT is blocked waiting for input, and whether it has output that has not been read yet.
+ */
+interface InputProbe {
+
+    /**
+     * @return {@code true} only if the SUT is known to be blocked reading its stdin
+     */
+    boolean isAwaitingInput();
+
+    /**
+     * Tells whether output of the SUT is still waiting in its stdout pipe. Unlike the stream of the process, this never
+     * blocks while a reader thread is blocked reading that stream.
+     *
+     * @return {@code false} only if the pipe is known to be empty
+     */
+    boolean hasUnreadOutput();
+
+}
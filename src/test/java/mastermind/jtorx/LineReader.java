@@ -0,0 +1,97 @@
+package mastermind.jtorx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reads lines from a stream into a reusable character buffer.
+ *
+ * Input is read in bulk, so a number of lines may be buffered after a call to {@link #readLine()}. Lines are decoded
+ * with the platform charset, as by an {@link java.io.InputStreamReader}; lines of ASCII characters only, which all
+ * commands are in practice, are copied without a decoder.
+ */
+final class LineReader {
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private int position, limit;
+
+    private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] lineBytes = new byte[256];
+    private char[] line = new char[256];
+
+    LineReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next line. The line terminator ({@code \n} or {@code \r\n}) is not included.
+     *
+     * @return the length of the line, or -1 at the end of the stream
+     * @throws IOException if reading fails
+     */
+    int readLine() throws IOException {
+        int length = 0;
+        boolean ascii = true;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return length > 0 ? decode(length, ascii) : -1;
+                }
+            }
+
+            byte b = buffer[position++];
+            if (b == '\n') {
+                if (length > 0 && lineBytes[length - 1] == '\r')
+                    length--;
+                return decode(length, ascii);
+            }
+
+            if (length == lineBytes.length)
+                lineBytes = Arrays.copyOf(lineBytes, length * 2);
+            lineBytes[length++] = b;
+            ascii &= b >= 0;
+        }
+    }
+
+    /**
+     * Decodes the bytes of a line into the line buffer.
+     *
+     * @return the number of characters
+     */
+    private int decode(int length, boolean ascii) throws IOException {
+        if (ascii) {
+            if (line.length < length)
+                line = new char[lineBytes.length];
+            for (int i = 0; i < length; i++)
+                line[i] = (char) lineBytes[i];
+            return length;
+        }
+
+        CharBuffer chars = decoder.decode(ByteBuffer.wrap(lineBytes, 0, length));
+        if (line.length < chars.remaining())
+            line = new char[chars.remaining() * 2];
+        int count = chars.remaining();
+        chars.get(line, 0, count);
+        return count;
+    }
+
+    /**
+     * @return the buffer containing the last line read
+     */
+    char[] getLine() {
+        return line;
+    }
+
+}
@@ -29,6 +29,10 @@ public class MMAdapter extends Adapter {
             new OutputClassifier("!Goodbye"      , "Thank you for playing! Bye!\n")
     };
 
+    public MMAdapter(long timeout, int poolSize) {
+        super(timeout, poolSize);
+    }
+
     public MMAdapter(long timeout) {
         super(timeout);
     }
@@ -52,12 +56,19 @@ public class MMAdapter extends Adapter {
 
     @Override
     protected String[] getJavaArguments() {
-        return new String[] {"-cp", System.getProperty("java.class.path"), "MasterMind"};
+        return new String[] {"-cp", System.getProperty("java.class.path"), getMainClass()};
+    }
+
+    @Override
+    protected String getMainClass() {
+        return "MasterMind";
     }
 
     public static void main(String[] args) {
         MMAdapter adapter;
-        if (args.length > 0)
+        if (args.length > 1)
+            adapter = new MMAdapter(Long.parseLong(args[0]), Integer.parseInt(args[1]));
+        else if (args.length > 0)
             adapter = new MMAdapter(Long.parseLong(args[0]));
         else
             adapter = new MMAdapter();
@@ -1,41 +1,67 @@
 package mastermind.jtorx;
 
 import java.util.Arrays;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import mastermind.metrics.LatencyHistogram;
+import mastermind.metrics.Metrics;
 
 public class OutputClassifier {
     private final Pattern pattern;
     private final String label;
     private final TestCase[] testCases;
+    private final LatencyHistogram latency;
 
     public OutputClassifier(String label, String pattern, TestCase... testCases) {
         this.pattern = Pattern.compile(pattern);
         this.label = label;
         this.testCases = testCases;
+        this.latency = Metrics.getShared().histogram("label." + label);
     }
 
     public int run(CharSequence output) {
         Matcher matcher = pattern.matcher(output);
         if (matcher.lookingAt()) {
-            for (int i = 0; i < testCases.length; i++) {
-                int[] groups = testCases[i].getGroups();
-                String[] arguments = new String[groups.length];
-                for (int j = 0; j < arguments.length; j++) {
-                    arguments[j] = matcher.group(groups[j]);
-                }
-                if (!testCases[i].run(arguments)) {
-                    System.out.printf("A_LOG Test case %d for label %s failed with arguments: %s.%n", i, label, Arrays.toString(arguments));
-                }
-            }
+            runTestCases(matcher, 0);
             return matcher.group().length();
         }
 
         return -1;
     }
 
+    /**
+     * Runs the test cases against a match of this classifier's pattern.
+     *
+     * @param match the match
+     * @param groupOffset index of the group that corresponds to group 0 of this classifier's pattern
+     */
+    void runTestCases(MatchResult match, int groupOffset) {
+        for (int i = 0; i < testCases.length; i++) {
+            int[] groups = testCases[i].getGroups();
+            String[] arguments = new String[groups.length];
+            for (int j = 0; j < arguments.length; j++) {
+                arguments[j] = match.group(groupOffset + groups[j]);
+            }
+            if (!testCases[i].run(arguments)) {
+                System.out.printf("A_LOG Test case %d for label %s failed with arguments: %s.%n", i, label, Arrays.toString(arguments));
+            }
+        }
+    }
+
     public String getLabel() {
         return label;
     }
 
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return the time from the last input of the SUT until output with this label has been classified
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
 }
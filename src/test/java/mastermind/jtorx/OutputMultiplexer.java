@@ -0,0 +1,137 @@
+package mastermind.jtorx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Services the output of many SUTs from a fixed number of threads.
+ *
+ * The standard streams of a child process are not selectable channels, so readiness is determined by polling
+ * {@link SUTOutput#isReady()}. A thread reads from every SUT with pending output and parks with an increasing back-off
+ * when none of its SUTs has any, so idle SUTs cost neither threads nor (much) CPU time.
+ */
+public class OutputMultiplexer {
+
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Worker[] workers;
+    private int next;
+
+    /**
+     * Starts the I/O threads.
+     *
+     * @param threads number of I/O threads
+     */
+    public OutputMultiplexer(int threads) {
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker("output-multiplexer-" + i);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Starts servicing the output of a SUT until it has stopped.
+     *
+     * @param output output of the SUT
+     */
+    synchronized void register(SUTOutput output) {
+        Worker worker = workers[next];
+        next = (next + 1) % workers.length;
+        worker.added.add(output);
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * Stops the I/O threads.
+     */
+    public void close() {
+        for (Worker worker : workers)
+            worker.interrupt();
+    }
+
+    private static final class Worker extends Thread {
+
+        private final Queue<SUTOutput> added = new ConcurrentLinkedQueue<>();
+        private final List<Entry> entries = new ArrayList<>();
+
+        private Worker(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long parkNanos = MIN_PARK_NANOS;
+            while (!isInterrupted()) {
+                SUTOutput output;
+                while ((output = added.poll()) != null)
+                    entries.add(new Entry(output));
+
+                boolean progress = false;
+                for (Iterator<Entry> iterator = entries.iterator(); iterator.hasNext(); ) {
+                    Entry entry = iterator.next();
+                    if (entry.service()) {
+                        progress = true;
+                        if (entry.output.isFinished())
+                            iterator.remove();
+                    }
+                }
+
+                if (progress) {
+                    parkNanos = MIN_PARK_NANOS;
+                } else {
+                    LockSupport.parkNanos(this, parkNanos);
+                    parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final SUTOutput output;
+        private long endOfOutput = -1;
+
+        private Entry(SUTOutput output) {
+            this.output = output;
+        }
+
+        /**
+         * @return whether any progress has been made
+         */
+        private boolean service() {
+            if (endOfOutput == -1) {
+                try {
+                    if (!output.isReady() && !output.hasExited()) { // At the end of the output, ready() stays false
+                        if (output.flush())
+                            return true;
+                        output.markIdle();
+                        return false;
+                    }
+                    if (output.read())
+                        return true;
+                } catch (IOException ignored) {
+
+                }
+                endOfOutput = System.nanoTime();
+            }
+
+            long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - endOfOutput);
+            if (output.hasExited() || waited >= output.getExitTimeout()) {
+                output.finish();
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+}
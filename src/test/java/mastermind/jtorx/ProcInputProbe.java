@@ -0,0 +1,124 @@
+package mastermind.jtorx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Probes a child process through the Linux {@code /proc} file system.
+ *
+ * The child is waiting for input if none of its threads is running and at least one of them is blocked in a
+ * {@code read} system call on file descriptor 0. Its unread output is the number of bytes in the pipe of its file
+ * descriptor 1, which is opened anew through {@code /proc} for every probe so that the probe never waits for the lock
+ * of the stream a reader thread is blocked on.
+ */
+final class ProcInputProbe implements InputProbe {
+
+    private static final String READ_STDIN = readStdinPrefix();
+
+    private final File tasks;
+    private final File stdout;
+    private final byte[] buffer = new byte[512];
+    private volatile boolean failed;
+
+    private ProcInputProbe(long pid) {
+        tasks = new File("/proc/" + pid + "/task");
+        stdout = new File("/proc/" + pid + "/fd/1");
+    }
+
+    /**
+     * Creates a probe for the given process, if the platform supports it.
+     *
+     * @param process a child process
+     * @return the probe, or {@code null} if unsupported
+     */
+    static ProcInputProbe create(Process process) {
+        if (READ_STDIN == null || !new File("/proc/self/task").isDirectory())
+            return null;
+
+        long pid = getPid(process);
+        return pid > 0 ? new ProcInputProbe(pid) : null;
+    }
+
+    private static String readStdinPrefix() {
+        String arch = System.getProperty("os.arch");
+        if (arch.equals("amd64") || arch.equals("x86_64"))
+            return "0 0x0 ";
+        if (arch.equals("aarch64"))
+            return "63 0x0 ";
+        return null;
+    }
+
+    private static long getPid(Process process) {
+        try {
+            Method pid = Process.class.getMethod("pid"); // Java 9+
+            return (Long) pid.invoke(process);
+        } catch (ReflectiveOperationException ignored) {
+
+        }
+
+        try {
+            Field pid = process.getClass().getDeclaredField("pid"); // UNIXProcess on older Java versions
+            pid.setAccessible(true);
+            return pid.getInt(process);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized boolean isAwaitingInput() {
+        if (failed)
+            return false;
+
+        File[] threads = tasks.listFiles();
+        if (threads == null)
+            return false;
+
+        boolean reading = false;
+        for (File thread : threads) {
+            try {
+                String stat = read(new File(thread, "stat"));
+                int end = stat.lastIndexOf(')');
+                if (end == -1 || end + 2 >= stat.length() || stat.charAt(end + 2) == 'R')
+                    return false;
+
+                if (!reading && read(new File(thread, "syscall")).startsWith(READ_STDIN))
+                    reading = true;
+            } catch (IOException e) {
+                if (thread.isDirectory()) // Not permitted to inspect the process; don't try again
+                    failed = true;
+                return false;
+            }
+        }
+
+        return reading;
+    }
+
+    @Override
+    public boolean hasUnreadOutput() {
+        if (failed)
+            return true;
+
+        try (InputStream in = new FileInputStream(stdout)) {
+            return in.available() > 0; // FIONREAD on the pipe
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private String read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            int length = 0;
+            int count;
+            while (length < buffer.length && (count = in.read(buffer, length, buffer.length - length)) > 0)
+                length += count;
+
+            return new String(buffer, 0, length, "US-ASCII");
+        }
+    }
+
+}
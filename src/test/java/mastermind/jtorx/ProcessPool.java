@@ -0,0 +1,101 @@
+package mastermind.jtorx;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import mastermind.log.Log;
+
+/**
+ * A pool of pre-launched, idle processes.
+ *
+ * Processes are handed out by {@link #take()} and replaced in the background, so that the start-up time of a new
+ * process is not on the critical path of its user.
+ */
+public class ProcessPool {
+
+    private static final Log log = Log.err();
+
+    private final ProcessBuilder builder;
+    private final BlockingQueue<Process> idle;
+    private final ExecutorService launcher;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool and starts launching its processes.
+     *
+     * @param builder builder used to launch the processes
+     * @param size number of idle processes to keep around
+     */
+    public ProcessPool(ProcessBuilder builder, int size) {
+        this.builder = builder;
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.launcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "process-pool-launcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        for (int i = 0; i < size; i++)
+            refill();
+    }
+
+    /**
+     * Hands out an idle process. If none is available yet, a new process is started directly.
+     *
+     * @return a running process
+     * @throws IOException if a process could not be started
+     */
+    public Process take() throws IOException {
+        if (closed)
+            throw new IllegalStateException("Pool is closed");
+
+        Process process;
+        while ((process = idle.poll()) != null) {
+            refill();
+            try {
+                process.exitValue(); // Process died while idle; discard it
+            } catch (IllegalThreadStateException e) {
+                return process;
+            }
+        }
+
+        return builder.start();
+    }
+
+    /**
+     * Stops launching new processes and destroys all idle ones.
+     */
+    public void close() {
+        closed = true;
+        launcher.shutdownNow();
+
+        Process process;
+        while ((process = idle.poll()) != null)
+            process.destroy();
+    }
+
+    private void refill() {
+        try {
+            launcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (closed)
+                        return;
+
+                    try {
+                        Process process = builder.start();
+                        if (closed || !idle.offer(process))
+                            process.destroy();
+                    } catch (IOException e) {
+                        log.error("Unable to launch pooled process: " + e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // Pool has been closed
+        }
+    }
+
+}
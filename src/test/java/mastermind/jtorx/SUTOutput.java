@@ -0,0 +1,255 @@
+package mastermind.jtorx;
+
+import java.io.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import mastermind.log.Log;
+
+/**
+ * The output side of a running SUT: reads its stdout and classifies it into output events.
+ *
+ * The output can either be read by a dedicated thread ({@link #run()}) or by an {@link OutputMultiplexer}, which reads
+ * only when data is available.
+ *
+ * Only complete lines are classified as soon as they are read, so that a classifier never matches output that the SUT
+ * has not finished writing. The text after the last line break, such as a prompt, is classified once the SUT waits for
+ * input or has written nothing for the quiet period.
+ */
+class SUTOutput implements Runnable {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final long PROBE_NANOS    = TimeUnit.MICROSECONDS.toNanos(500); // As often as AdapterSession probes
+
+    private static final Log log = Log.err();
+
+    private final Process process;
+    private final Reader reader;
+    private final CharRingBuffer buffer = new CharRingBuffer(BUFFER_SIZE);
+    private final ClassifierEngine engine;
+    private final BlockingQueue<String> events;
+    private final InputProbe probe;
+    private final long quietNanos;
+    private final long exitTimeout;
+    private long lastRead; // Only used by the reading thread
+    private long lastProbe = System.nanoTime() - PROBE_NANOS; // Likewise
+    private volatile boolean finished;
+    private volatile boolean awaitingOutput;
+    private volatile boolean pending;
+    private volatile boolean partial; // Whether text after the last line break is waiting to be classified
+    private volatile long inputTime = System.nanoTime();
+
+    /**
+     * @param process the SUT
+     * @param engine classifier engine used to classify the output
+     * @param events queue that receives the output events
+     * @param probe probe that tells when the SUT waits for input, or {@code null}
+     * @param quietPeriod time without output after which an incomplete line is classified, in milliseconds
+     * @param exitTimeout time to wait for the SUT to exit once its output has ended, in milliseconds
+     */
+    SUTOutput(Process process, ClassifierEngine engine, BlockingQueue<String> events, InputProbe probe,
+              long quietPeriod, long exitTimeout) {
+        this.process = process;
+        this.reader = new InputStreamReader(new ObservedInputStream(process.getInputStream()));
+        this.engine = engine;
+        this.events = events;
+        this.probe = probe;
+        this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+        this.exitTimeout = exitTimeout;
+    }
+
+    /**
+     * Reads and classifies all output until the SUT has stopped.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long parkNanos = MIN_PARK_NANOS;
+                while (partial && !reader.ready() && !flush()) {
+                    LockSupport.parkNanos(this, parkNanos);
+                    parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+                }
+                if (!read())
+                    break;
+            }
+            process.waitFor(exitTimeout, TimeUnit.MILLISECONDS); // Output has ended; give the SUT time to exit
+        } catch (IOException | InterruptedException ignored) {
+
+        }
+
+        finish();
+    }
+
+    /**
+     * @return whether output can be read without blocking
+     * @throws IOException if the stream has failed
+     */
+    boolean isReady() throws IOException {
+        return reader.ready();
+    }
+
+    /**
+     * Performs a single bulk read and classifies the complete lines read so far. At the end of the output, all of it
+     * is classified.
+     *
+     * @return {@code false} at the end of the output
+     * @throws IOException if reading fails
+     */
+    boolean read() throws IOException {
+        if (buffer.readFrom(reader) == -1) {
+            classify(buffer.length());
+            partial = false;
+            return false;
+        }
+
+        lastRead = System.nanoTime();
+        int end = buffer.length();
+        while (end > 0 && buffer.charAt(end - 1) != '\n')
+            end--;
+        partial = end < buffer.length();
+        classify(end);
+        pending = false;
+
+        return true;
+    }
+
+    /**
+     * Classifies the text after the last line break if no more output is available and either the SUT waits for input
+     * or the quiet period has passed since the last read. The probe is asked at most every 500 µs, as it is costly.
+     *
+     * @return whether the text has been classified
+     * @throws IOException if the stream has failed
+     */
+    boolean flush() throws IOException {
+        if (!partial || reader.ready())
+            return false;
+        long now = System.nanoTime();
+        boolean blocked = false;
+        if (probe != null && now - lastProbe >= PROBE_NANOS) {
+            lastProbe = now;
+            // The SUT must be blocked before checking the output again, as it cannot produce any more output after that
+            blocked = probe.isAwaitingInput() && !reader.ready();
+        }
+        if (!blocked && now - lastRead < quietNanos)
+            return false;
+
+        classify(buffer.length());
+        partial = false;
+        return true;
+    }
+
+    /**
+     * Records that input has been sent to the SUT, from which the latency of the following output is measured.
+     */
+    void markInput() {
+        inputTime = System.nanoTime();
+    }
+
+    /**
+     * Marks the output as idle when no output is available; used when reading without blocking.
+     */
+    void markIdle() {
+        if (!pending)
+            awaitingOutput = true;
+    }
+
+    /**
+     * @return whether all output that has been read is classified and the reader is waiting for more
+     */
+    boolean isDrained() {
+        return awaitingOutput && !pending && !partial;
+    }
+
+    /**
+     * Classifies output from the start of the buffer, as long as a classifier matches within the given length.
+     *
+     * @param end number of characters that may be classified
+     */
+    private void classify(int end) {
+        while (end > 0) {
+            ClassifierEngine.Classification classification =
+                    engine.classify(end == buffer.length() ? buffer : buffer.prefix(end));
+            if (classification == null)
+                return;
+
+            classification.getClassifier().getLatency().recordSince(inputTime);
+            int length = classification.getLength();
+            if (log.isEnabled(Log.Level.DEBUG))
+                log.debug(buffer.subSequence(0, length).toString());
+            buffer.consume(length);
+            events.add(classification.getLabel());
+            end -= length;
+        }
+    }
+
+    /**
+     * @return whether the SUT process has exited
+     */
+    boolean hasExited() {
+        try {
+            process.exitValue();
+            return true;
+        } catch (IllegalThreadStateException e) {
+            return false;
+        }
+    }
+
+    long getExitTimeout() {
+        return exitTimeout;
+    }
+
+    /**
+     * Reports how the SUT has stopped; destroys it if it has not.
+     */
+    void finish() {
+        try {
+            events.add(process.exitValue() == 0 ? "!Stopped" : "!Crashed");
+        } catch (IllegalThreadStateException ignored) {
+            process.destroy();
+            events.add("!Terminated");
+        }
+        finished = true;
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    Process getProcess() {
+        return process;
+    }
+
+    /**
+     * Records whether the output is waiting for data and whether data has been read that is not classified yet.
+     */
+    private final class ObservedInputStream extends FilterInputStream {
+
+        private ObservedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            awaitingOutput = true;
+            int b = super.read();
+            if (b != -1)
+                pending = true;
+            awaitingOutput = false;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            awaitingOutput = true;
+            int count = super.read(b, off, len);
+            if (count > 0)
+                pending = true;
+            awaitingOutput = false;
+            return count;
+        }
+    }
+
+}
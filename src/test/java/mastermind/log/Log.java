@@ -0,0 +1,202 @@
+package mastermind.log;
+
+import java.io.*;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import mastermind.stdio.StdioRouter;
+
+/**
+ * An asynchronous log on a console stream.
+ *
+ * Logging a message only queues it on a bounded lock-free queue, so the threads that drive and read programs never
+ * wait for console I/O. A background thread writes the messages in batches, flushing once per batch. If the queue is
+ * full, messages are dropped rather than waited for; the number of dropped messages is logged once there is room
+ * again. The messages still queued are written when the JVM exits.
+ *
+ * The level is configured by {@code -Dblackbox.log=debug|info|warn|error|off}; it defaults to {@code debug}.
+ */
+public final class Log {
+
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    private static final Level LEVEL     = Level.valueOf(System.getProperty("blackbox.log", "debug").toUpperCase(Locale.ROOT));
+    private static final int   CAPACITY  = 1 << 16;
+    private static final long  IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(1); // Between checks for new messages
+
+    private static Log out, err;
+
+    private final Level level;
+    private final Writer writer;
+    private final MpscQueue<String> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final Thread thread;
+    private volatile long flushed; // Number of messages written and flushed
+    private volatile boolean closed;
+
+    /**
+     * @param stream stream to write to
+     * @param level lowest level of messages that are written
+     * @param capacity maximum number of queued messages
+     * @param name name of the writer thread
+     */
+    public Log(OutputStream stream, Level level, int capacity, String name) {
+        this.level = level;
+        this.writer = new BufferedWriter(new OutputStreamWriter(stream), 1 << 16);
+        this.queue = new MpscQueue<>(capacity);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeMessages();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }));
+    }
+
+    /**
+     * @return the shared log on the actual stdout
+     */
+    public static synchronized Log out() {
+        if (out == null)
+            out = new Log(StdioRouter.getRealOut(), LEVEL, CAPACITY, "log-out");
+
+        return out;
+    }
+
+    /**
+     * @return the shared log on stderr
+     */
+    public static synchronized Log err() {
+        if (err == null)
+            err = new Log(System.err, LEVEL, CAPACITY, "log-err");
+
+        return err;
+    }
+
+    /**
+     * @param level a level
+     * @return whether messages of the given level are written; check this before building expensive messages
+     */
+    public boolean isEnabled(Level level) {
+        return level.compareTo(this.level) >= 0 && level != Level.OFF;
+    }
+
+    /**
+     * Queues a message; it is written as a line of its own.
+     *
+     * @param level level of the message
+     * @param message the message
+     */
+    public void log(Level level, String message) {
+        if (!isEnabled(level) || closed)
+            return;
+
+        if (queue.offer(message))
+            queued.incrementAndGet();
+        else
+            dropped.incrementAndGet();
+    }
+
+    public void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    /**
+     * Logs an error together with the stack trace of its cause.
+     *
+     * @param message the message
+     * @param cause the exception
+     */
+    public void error(String message, Throwable cause) {
+        if (!isEnabled(Level.ERROR))
+            return;
+
+        StringWriter trace = new StringWriter();
+        cause.printStackTrace(new PrintWriter(trace));
+        log(Level.ERROR, message + System.lineSeparator() + trace.toString().trim());
+    }
+
+    /**
+     * @return the number of messages dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void writeMessages() {
+        long written = 0, reportedDrops = 0;
+        try {
+            while (true) {
+                String message = queue.poll();
+                if (message == null) {
+                    writer.flush(); // The end of a batch
+                    flushed = written;
+                    if (closed && queued.get() == written)
+                        break;
+                    LockSupport.parkNanos(IDLE_WAIT);
+                    continue;
+                }
+
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    writer.write("(" + (drops - reportedDrops) + " log messages dropped)");
+                    writer.write(System.lineSeparator());
+                    reportedDrops = drops;
+                }
+
+                writer.write(message);
+                writer.write(System.lineSeparator());
+                written++;
+            }
+        } catch (IOException ignored) {
+            // The console is gone; nothing left to log to
+        }
+    }
+
+    /**
+     * Waits until all messages queued so far have been written and flushed.
+     */
+    public void flush() {
+        long target = queued.get();
+        while (flushed < target && thread.isAlive())
+            LockSupport.parkNanos(IDLE_WAIT);
+    }
+
+    /**
+     * Writes all queued messages and stops the writer; messages logged afterwards are ignored.
+     */
+    public void close() {
+        closed = true;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package mastermind.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer.
+ *
+ * Every slot of the ring has a sequence number that tells whose turn it is: a producer claims the slot at the tail by
+ * advancing the tail with a compare-and-set, stores its element and then publishes the slot to the consumer; the
+ * consumer releases the slot to the producers of the next round. A full queue rejects elements instead of waiting.
+ */
+final class MpscQueue<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // Only used by the consumer
+
+    /**
+     * @param capacity maximum number of elements; rounded up to a power of two
+     */
+    MpscQueue(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = this.capacity - 1;
+        elements = new AtomicReferenceArray<>(this.capacity);
+        sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * Adds an element without blocking; may be called by any thread.
+     *
+     * @param element the element
+     * @return {@code false} if the queue is full
+     */
+    boolean offer(E element) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+            } else if (sequence < position) {
+                return false; // The consumer has not released the slot of the previous round yet
+            }
+        }
+
+        elements.set(slot, element);
+        sequences.lazySet(slot, position + 1); // Publishes the element
+        return true;
+    }
+
+    /**
+     * Removes the oldest element; must only be called by the consumer.
+     *
+     * @return the element, or {@code null} if the queue is empty
+     */
+    E poll() {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1)
+            return null;
+
+        E element = elements.get(slot);
+        elements.lazySet(slot, null);
+        sequences.lazySet(slot, head + capacity); // Releases the slot to the producers of the next round
+        head++;
+        return element;
+    }
+
+}
@@ -0,0 +1,183 @@
+package mastermind.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations that can be recorded concurrently without locking.
+ *
+ * Durations are counted in log-linear buckets: every power of two is split into {@value #SUB_BUCKETS} buckets, so a
+ * percentile is accurate to within 12.5%, whatever the range of the durations. Recording a duration costs a few
+ * atomic increments and never allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param name name of the histogram, shown in reports
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos duration in nanoseconds; negative durations are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+            current = max.get();
+    }
+
+    /**
+     * Records the time elapsed since the given start time.
+     *
+     * @param start start time as returned by {@link System#nanoTime()}
+     */
+    public void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * @return number of durations recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return sum of all durations recorded, in nanoseconds
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @return longest duration recorded, in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return average duration, in nanoseconds; 0 if nothing has been recorded
+     */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * Estimates a percentile by the upper bound of the bucket it falls in.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the duration in nanoseconds; 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            n += counts.get(i);
+        if (n == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE, max.get());
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Writes the recorded durations, so that they can be added to another histogram by {@link #readFrom(DataInput)}.
+     *
+     * @param out stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int used = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            if (counts.get(i) != 0)
+                used++;
+
+        out.writeLong(total.get());
+        out.writeLong(max.get());
+        out.writeShort(used);
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.get(i);
+            if (n != 0) {
+                out.writeShort(i);
+                out.writeLong(n);
+            }
+        }
+    }
+
+    /**
+     * Adds durations written by {@link #writeTo(DataOutput)} to those recorded.
+     *
+     * @param in stream to read from
+     * @throws IOException if reading fails or the data is corrupt
+     */
+    public void readFrom(DataInput in) throws IOException {
+        long sum = in.readLong();
+        long longest = in.readLong();
+        int used = in.readUnsignedShort();
+        for (int j = 0; j < used; j++) {
+            int i = in.readUnsignedShort();
+            if (i >= BUCKETS)
+                throw new IOException("Invalid bucket " + i);
+            long n = in.readLong();
+            counts.addAndGet(i, n);
+            count.addAndGet(n);
+        }
+        total.addAndGet(sum);
+
+        long current = max.get();
+        while (longest > current && !max.compareAndSet(current, longest))
+            current = max.get();
+    }
+
+}
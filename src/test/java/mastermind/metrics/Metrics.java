@@ -0,0 +1,143 @@
+package mastermind.metrics;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A set of named latency histograms, which can be reported at the end of a run and periodically during it.
+ *
+ * Histograms are meant to be looked up once and kept in a field; recording into them is cheap enough for every round
+ * trip and every classification.
+ */
+public final class Metrics {
+
+    private static Metrics shared;
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reporting;
+
+    /**
+     * Receives the lines of a report.
+     */
+    public interface Reporter {
+        void report(String line);
+    }
+
+    /**
+     * @return the metrics shared by all harnesses and the adapter
+     */
+    public static synchronized Metrics getShared() {
+        if (shared == null)
+            shared = new Metrics();
+
+        return shared;
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it if necessary.
+     *
+     * @param name histogram name
+     * @return the histogram
+     */
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram(name);
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null)
+                histogram = created;
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Reports every histogram that has recorded anything, ordered by name: the count, the mean, the 50th, 90th and
+     * 99th percentile and the maximum in microseconds, and the total in milliseconds.
+     *
+     * @param reporter receives one line per histogram
+     */
+    public void report(Reporter reporter) {
+        Map<String, LatencyHistogram> sorted = new TreeMap<>(histograms);
+        for (LatencyHistogram histogram : sorted.values()) {
+            if (histogram.getCount() == 0)
+                continue;
+
+            reporter.report(String.format("%s: n=%d mean=%dus p50=%dus p90=%dus p99=%dus max=%dus total=%dms",
+                    histogram.getName(), histogram.getCount(), micros(histogram.getMean()),
+                    micros(histogram.getPercentile(50)), micros(histogram.getPercentile(90)),
+                    micros(histogram.getPercentile(99)), micros(histogram.getMax()),
+                    TimeUnit.NANOSECONDS.toMillis(histogram.getTotal())));
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Prints a report to the given stream.
+     *
+     * @param stream stream to print to
+     */
+    public void print(final PrintStream stream) {
+        report(toStream(stream));
+    }
+
+    /**
+     * @param stream stream to print to
+     * @return a reporter that prints every line to the given stream
+     */
+    public static Reporter toStream(final PrintStream stream) {
+        return new Reporter() {
+            @Override
+            public void report(String line) {
+                stream.println("Metrics: " + line);
+            }
+        };
+    }
+
+    /**
+     * Starts reporting periodically on a background thread, until {@link #stopReporting()} is called.
+     *
+     * @param period time between reports, in milliseconds; 0 or less to not report periodically
+     * @param reporter receives the reports
+     */
+    public synchronized void startReporting(long period, final Reporter reporter) {
+        if (period <= 0 || reporting != null)
+            return;
+
+        reporting = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporting.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report(reporter);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops periodic reporting.
+     */
+    public synchronized void stopReporting() {
+        if (reporting != null) {
+            reporting.shutdownNow();
+            reporting = null;
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package mastermind.metrics;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeouts learned from the latencies of the program, per step.
+ *
+ * A step is identified by a key, such as the vertex of a model or the label of the previous output. For every key, the
+ * model keeps a histogram of how long the program has taken to produce its output; the timeout for the key is twice
+ * its {@value #PERCENTILE}th percentile, but at least {@value #MIN_TIMEOUT} ms and at most ten times the default.
+ * Until a key has {@value #MIN_SAMPLES} samples, the histogram of all keys together is used instead, and until that
+ * has enough samples, the default timeout.
+ *
+ * A step that times out says only that its latency is at least the timeout, so the timeout is recorded as a (censored)
+ * sample, and the timeout of the key is doubled for every further consecutive timeout. Without this, a learned timeout
+ * could only ever shrink: the slow cases that would raise it are exactly those that time out.
+ *
+ * The histograms are read from a file when the model is created and written back when the JVM exits, so that later
+ * runs start from what earlier runs have learned. The file starts with {@link #MAGIC} and {@link #VERSION}, followed by
+ * the number of keys and every key with its histogram.
+ */
+public final class TimeoutModel {
+
+    static final int MAGIC = 0x4D4D544F; // "MMTO"
+    static final int VERSION = 1;
+
+    private static final double PERCENTILE  = 99.9;
+    private static final int    MARGIN      = 2;
+    private static final int    MIN_SAMPLES = 20;
+    private static final long   MIN_TIMEOUT = 50; // Milliseconds; covers a GC pause or a busy machine
+    private static final int    MAX_BACKOFF = 1 << 10;
+    private static final String ALL         = "*";
+
+    private final File file;
+    private final long defaultTimeout;
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> backoff = new ConcurrentHashMap<>(); // Of keys that have timed out
+
+    /**
+     * @param file file to read the learned histograms from and write them to; {@code null} to learn for this run only
+     * @param defaultTimeout timeout until enough has been learned, in milliseconds
+     */
+    public TimeoutModel(File file, long defaultTimeout) {
+        this.file = file;
+        this.defaultTimeout = defaultTimeout;
+        if (file == null)
+            return;
+
+        if (file.isFile()) {
+            try {
+                load();
+            } catch (IOException e) {
+                System.err.println("Cannot read timeouts from " + file + ": " + e.getMessage());
+            }
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    save();
+                } catch (IOException e) {
+                    System.err.println("Cannot write timeouts to " + file + ": " + e.getMessage());
+                }
+            }
+        }));
+    }
+
+    private LatencyHistogram histogram(String key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram(key);
+            histogram = histograms.putIfAbsent(key, created);
+            if (histogram == null)
+                histogram = created;
+        }
+
+        return histogram;
+    }
+
+    /**
+     * @param key the step
+     * @return the time to wait for output in this step, in milliseconds
+     */
+    public long getTimeout(String key) {
+        Integer factor = backoff.get(key);
+        return Math.min(getLearnedTimeout(key) * (factor != null ? factor : 1), 10 * defaultTimeout);
+    }
+
+    private long getLearnedTimeout(String key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null || histogram.getCount() < MIN_SAMPLES)
+            histogram = histograms.get(ALL);
+        if (histogram == null || histogram.getCount() < MIN_SAMPLES)
+            return defaultTimeout;
+
+        long timeout = TimeUnit.NANOSECONDS.toMillis(MARGIN * histogram.getPercentile(PERCENTILE)) + 1;
+        return Math.min(Math.max(timeout, MIN_TIMEOUT), 10 * defaultTimeout);
+    }
+
+    /**
+     * Records how long the program has taken to produce its output in a step.
+     *
+     * @param key the step
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(String key, long nanos) {
+        backoff.remove(key);
+        histogram(key).record(nanos);
+        histogram(ALL).record(nanos);
+    }
+
+    /**
+     * Records that the program has not produced its output within the timeout of a step.
+     *
+     * @param key the step
+     */
+    public void recordTimeout(String key) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(getTimeout(key));
+        histogram(key).record(nanos);
+        histogram(ALL).record(nanos);
+
+        Integer factor = backoff.get(key);
+        backoff.put(key, factor == null ? 2 : Math.min(factor * 2, MAX_BACKOFF));
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION)
+                throw new IOException("Not a timeout model");
+
+            for (int keys = in.readInt(); keys > 0; keys--)
+                histogram(in.readUTF()).readFrom(in);
+        }
+    }
+
+    /**
+     * Writes the learned histograms to the file, replacing it.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (file == null)
+            return;
+
+        Map<String, LatencyHistogram> sorted = new TreeMap<>(histograms);
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(sorted.size());
+            for (Map.Entry<String, LatencyHistogram> entry : sorted.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Prints the timeout of every key, such as {@code v_RequestPeg: 5 ms (n=1200)}.
+     *
+     * @param reporter receives the lines
+     */
+    public void report(Metrics.Reporter reporter) {
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet())
+            reporter.report(String.format("timeout %s: %d ms (n=%d)",
+                    entry.getKey(), getTimeout(entry.getKey()), entry.getValue().getCount()));
+    }
+
+}
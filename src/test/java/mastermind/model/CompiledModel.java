@@ -0,0 +1,197 @@
+package mastermind.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A GraphWalker model compiled into a dispatch table by {@link ModelCompiler}.
+ *
+ * Vertices and edges are numbered in the order of the model file. Subclasses are generated: they keep the model
+ * variables in typed fields and implement guards, actions and the methods of edges and vertices as switches over
+ * these numbers, so that walking an edge needs neither reflection nor an expression interpreter.
+ */
+public abstract class CompiledModel {
+
+    private final String[] vertices;
+    private final String[] edges;
+    private final int[] sources, targets;
+    private final int start;
+    private final int[][] outgoing;
+    private final Map<String, Integer> vertexIndex = new HashMap<>();
+
+    private int current;
+
+    /**
+     * @param vertices vertex labels
+     * @param edges edge names; {@code null} for unlabeled edges
+     * @param sources source vertex of every edge
+     * @param targets target vertex of every edge
+     * @param start the start vertex
+     */
+    protected CompiledModel(String[] vertices, String[] edges, int[] sources, int[] targets, int start) {
+        this.vertices = vertices;
+        this.edges = edges;
+        this.sources = sources;
+        this.targets = targets;
+        this.start = start;
+
+        List<List<Integer>> lists = new ArrayList<>();
+        for (int vertex = 0; vertex < vertices.length; vertex++) {
+            lists.add(new ArrayList<Integer>());
+            vertexIndex.put(vertices[vertex], vertex);
+        }
+        for (int edge = 0; edge < edges.length; edge++)
+            lists.get(sources[edge]).add(edge);
+
+        outgoing = new int[vertices.length][];
+        for (int vertex = 0; vertex < vertices.length; vertex++) {
+            List<Integer> list = lists.get(vertex);
+            outgoing[vertex] = new int[list.size()];
+            for (int i = 0; i < outgoing[vertex].length; i++)
+                outgoing[vertex][i] = list.get(i);
+        }
+
+        reset();
+    }
+
+    /**
+     * Returns to the start vertex and resets all model variables.
+     */
+    public void reset() {
+        current = start;
+        resetVariables();
+    }
+
+    /**
+     * Walks an edge: performs its actions and its method, followed by the method of its target vertex.
+     *
+     * @param edge an enabled edge of the current vertex
+     * @return the current vertex afterwards, which differs from the target if the vertex method has moved the model
+     * @throws Exception if the method of the edge or vertex fails
+     */
+    public int walk(int edge) throws Exception {
+        if (sources[edge] != current)
+            throw new IllegalArgumentException("Edge " + edge + " does not leave " + vertices[current]);
+
+        current = targets[edge];
+        performActions(edge);
+        performEdge(edge);
+        performVertex(current);
+        return current;
+    }
+
+    /**
+     * Walks an edge without calling any methods, performing its actions only; used to plan paths.
+     *
+     * @param edge an enabled edge of the current vertex
+     */
+    public void simulate(int edge) {
+        current = targets[edge];
+        performActions(edge);
+    }
+
+    /**
+     * Moves the model to another vertex without walking an edge; used by vertex methods that find out from the output
+     * which state the program is in.
+     *
+     * @param vertex label of the vertex
+     * @throws IllegalArgumentException if there is no such vertex
+     */
+    public void setCurrentVertex(String vertex) {
+        Integer index = vertexIndex.get(vertex);
+        if (index == null)
+            throw new IllegalArgumentException("Unknown vertex: " + vertex);
+
+        current = index;
+    }
+
+    /**
+     * @param vertex the vertex to move the model to
+     */
+    public void setCurrentVertex(int vertex) {
+        current = vertex;
+    }
+
+    public int getCurrentVertex() {
+        return current;
+    }
+
+    public int getStartVertex() {
+        return start;
+    }
+
+    public int getVertexCount() {
+        return vertices.length;
+    }
+
+    public int getEdgeCount() {
+        return edges.length;
+    }
+
+    public String getVertexLabel(int vertex) {
+        return vertices[vertex];
+    }
+
+    /**
+     * @param edge an edge
+     * @return the name of its method, or {@code null} for an unlabeled edge
+     */
+    public String getEdgeName(int edge) {
+        return edges[edge];
+    }
+
+    public int getSource(int edge) {
+        return sources[edge];
+    }
+
+    public int getTarget(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * @param vertex a vertex
+     * @return the edges leaving the vertex; must not be modified
+     */
+    public int[] getOutgoing(int vertex) {
+        return outgoing[vertex];
+    }
+
+    /**
+     * @param edge an edge
+     * @return whether the guard of the edge holds for the current values of the model variables
+     */
+    public abstract boolean isEnabled(int edge);
+
+    /**
+     * @return the values of all model variables, in the order of their names
+     */
+    public abstract int[] getVariables();
+
+    /**
+     * @param values the values of all model variables, as returned by {@link #getVariables()}
+     */
+    public abstract void setVariables(int[] values);
+
+    /**
+     * Sets all model variables to their initial values.
+     */
+    protected abstract void resetVariables();
+
+    /**
+     * Performs the actions of an edge.
+     */
+    protected abstract void performActions(int edge);
+
+    /**
+     * Performs the method of an edge.
+     */
+    protected abstract void performEdge(int edge) throws Exception;
+
+    /**
+     * Performs the method of a vertex.
+     */
+    protected abstract void performVertex(int vertex) throws Exception;
+
+}
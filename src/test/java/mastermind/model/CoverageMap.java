@@ -0,0 +1,75 @@
+package mastermind.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counts how often every edge of a model has been walked; may be shared by several {@link ModelRunner}s walking
+ * instances of the same model at the same time.
+ */
+public final class CoverageMap {
+
+    private final AtomicIntegerArray visits;
+    private final AtomicInteger covered = new AtomicInteger();
+
+    /**
+     * @param edges number of edges of the model
+     */
+    public CoverageMap(int edges) {
+        visits = new AtomicIntegerArray(edges);
+    }
+
+    /**
+     * Records a walk of an edge.
+     *
+     * @param edge the edge
+     * @return whether the edge had not been covered before
+     */
+    public boolean cover(int edge) {
+        if (visits.getAndIncrement(edge) != 0)
+            return false;
+
+        covered.incrementAndGet();
+        return true;
+    }
+
+    public boolean isCovered(int edge) {
+        return visits.get(edge) != 0;
+    }
+
+    /**
+     * @return whether every edge has been covered
+     */
+    public boolean isComplete() {
+        return covered.get() == visits.length();
+    }
+
+    /**
+     * @param edge an edge
+     * @return how often it has been walked
+     */
+    public int getVisits(int edge) {
+        return visits.get(edge);
+    }
+
+    /**
+     * @return the number of distinct edges walked
+     */
+    public int getCoveredEdges() {
+        return covered.get();
+    }
+
+    public int getEdgeCount() {
+        return visits.length();
+    }
+
+    /**
+     * @return a summary such as {@code Edges covered: 15 of 15 (100%)}
+     */
+    @Override
+    public String toString() {
+        int edges = visits.length();
+        return String.format("Edges covered: %d of %d (%d%%)", covered.get(), edges, 100 * covered.get() / Math.max(edges, 1));
+    }
+
+}
@@ -0,0 +1,328 @@
+package mastermind.model;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compiles a GraphWalker model into the source of a {@link CompiledModel}.
+ *
+ * Edge labels have GraphWalker's form {@code name[guard]/action;action}; guards and actions are copied into the
+ * generated switches as Java, with every variable they use as an {@code int} field. The methods of edges and vertices
+ * are called directly on the class that implements them, which has the name of the model file.
+ *
+ * Usage: {@code ModelCompiler <model.graphml> <Dispatch.java>}; the generated class gets the name of the output file.
+ * From sbt: {@code sbt compileModel}.
+ */
+public final class ModelCompiler {
+
+    private static final String  YED        = "http://www.yworks.com/xml/graphml";
+    private static final Pattern LABEL      = Pattern.compile("(\\w+)?\\s*(?:\\[(.*?)\\])?\\s*(?:/(.*))?", Pattern.DOTALL);
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_]\\w*");
+    private static final Pattern ASSIGNMENT = Pattern.compile("\\s*([A-Za-z_]\\w*)\\s*(?:[-+*/]?=|\\+\\+|--).*");
+    private static final String  START      = "Start";
+
+    private final String modelName;
+    private final List<String> vertices = new ArrayList<>();
+    private final List<Edge> edges = new ArrayList<>();
+    private final Set<String> variables = new TreeSet<>();
+    private int start = -1;
+
+    private static final class Edge {
+        String id, name, guard, label;
+        int source, target;
+        final List<String> actions = new ArrayList<>();
+    }
+
+    /**
+     * Reads a model.
+     *
+     * @param file GraphWalker model in yEd's GraphML format
+     * @throws IOException if the model cannot be read or has an invalid label
+     */
+    public ModelCompiler(File file) throws IOException {
+        modelName = file.getName().replaceFirst("\\.[^.]*$", "");
+
+        Document document;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            document = factory.newDocumentBuilder().parse(file);
+        } catch (Exception e) {
+            throw new IOException("Cannot parse " + file + ": " + e.getMessage(), e);
+        }
+
+        Map<String, Integer> nodeIndex = new HashMap<>();
+        NodeList nodes = document.getElementsByTagNameNS("*", "node");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element node = (Element) nodes.item(i);
+            String label = label(node, "NodeLabel");
+            if (label == null || !IDENTIFIER.matcher(label).matches())
+                throw new IOException("Invalid vertex label of " + node.getAttribute("id") + ": " + label);
+            if (label.equals(START))
+                start = vertices.size();
+
+            nodeIndex.put(node.getAttribute("id"), vertices.size());
+            vertices.add(label);
+        }
+        if (start < 0)
+            throw new IOException("The model has no " + START + " vertex");
+
+        NodeList elements = document.getElementsByTagNameNS("*", "edge");
+        for (int i = 0; i < elements.getLength(); i++) {
+            Element element = (Element) elements.item(i);
+            Edge edge = new Edge();
+            edge.id = element.getAttribute("id");
+            edge.source = nodeIndex.get(element.getAttribute("source"));
+            edge.target = nodeIndex.get(element.getAttribute("target"));
+            edge.label = label(element, "EdgeLabel");
+            if (edge.label != null)
+                parseLabel(edge);
+            edges.add(edge);
+        }
+
+        for (Edge edge : edges)
+            if (edge.guard != null)
+                checkVariables(edge, edge.guard);
+    }
+
+    private static String label(Element element, String name) {
+        NodeList labels = element.getElementsByTagNameNS(YED, name);
+        if (labels.getLength() == 0)
+            return null;
+
+        String text = labels.item(0).getTextContent().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private void parseLabel(Edge edge) throws IOException {
+        Matcher matcher = LABEL.matcher(edge.label);
+        if (!matcher.matches())
+            throw new IOException("Invalid label of " + edge.id + ": " + edge.label);
+
+        edge.name = matcher.group(1);
+        edge.guard = matcher.group(2) == null ? null : matcher.group(2).trim();
+        if (matcher.group(3) != null) {
+            for (String action : matcher.group(3).split(";")) {
+                if (action.trim().isEmpty())
+                    continue;
+
+                Matcher assignment = ASSIGNMENT.matcher(action);
+                if (!assignment.matches())
+                    throw new IOException("Invalid action of " + edge.id + ": " + action);
+                variables.add(assignment.group(1));
+                edge.actions.add(action.trim());
+            }
+        }
+    }
+
+    private void checkVariables(Edge edge, String expression) throws IOException {
+        Matcher matcher = IDENTIFIER.matcher(expression.replaceAll("\\b\\d\\w*", ""));
+        while (matcher.find())
+            if (!variables.contains(matcher.group()))
+                throw new IOException("Unknown variable in " + edge.id + ": " + matcher.group());
+    }
+
+    /**
+     * Checks that the class implementing the model has a method for every label, if it can be loaded.
+     *
+     * @throws IOException if a method is missing
+     */
+    private void checkMethods() throws IOException {
+        Class<?> type;
+        try {
+            type = Class.forName(modelName);
+        } catch (ClassNotFoundException e) {
+            return;
+        }
+
+        Set<String> methods = new HashSet<>();
+        for (Method method : type.getMethods())
+            if (method.getParameterTypes().length == 0)
+                methods.add(method.getName());
+        for (int vertex = 0; vertex < vertices.size(); vertex++)
+            if (vertex != start && !methods.contains(vertices.get(vertex)))
+                throw new IOException(modelName + " has no method " + vertices.get(vertex));
+        for (Edge edge : edges)
+            if (edge.name != null && !methods.contains(edge.name))
+                throw new IOException(modelName + " has no method " + edge.name);
+    }
+
+    /**
+     * Writes the source of the compiled model.
+     *
+     * @param out stream to write to
+     * @param className name of the generated class
+     */
+    public void write(PrintWriter out, String className) {
+        out.println("// Generated from " + modelName + ".graphml by " + ModelCompiler.class.getName() + "; do not edit.");
+        out.println();
+        out.println("import " + CompiledModel.class.getName() + ";");
+        out.println();
+        out.println("/**");
+        out.println(" * The GraphWalker model of {@link " + modelName + "}, compiled into a dispatch table.");
+        out.println(" */");
+        out.println("final class " + className + " extends " + CompiledModel.class.getSimpleName() + " {");
+        out.println();
+
+        out.println("    private static final String[] VERTICES = {");
+        for (int vertex = 0; vertex < vertices.size(); vertex++)
+            out.printf("            %s, // %d%n", quote(vertices.get(vertex)), vertex);
+        out.println("    };");
+        out.println();
+        out.println("    private static final String[] EDGES = {");
+        for (int edge = 0; edge < edges.size(); edge++)
+            out.printf("            %s, // %d: %s%n", quote(edges.get(edge).name), edge, edges.get(edge).id);
+        out.println("    };");
+        out.println();
+        out.println("    private static final int[] SOURCES = " + table(true) + ";");
+        out.println("    private static final int[] TARGETS = " + table(false) + ";");
+        out.println();
+        out.println("    private final " + modelName + " model;");
+        if (!variables.isEmpty()) {
+            out.println();
+            out.println("    // Model variables");
+            out.println("    int " + join(variables, ", ") + ";");
+        }
+        out.println();
+
+        out.println("    " + className + "(" + modelName + " model) {");
+        out.println("        super(VERTICES, EDGES, SOURCES, TARGETS, " + start + ");");
+        out.println("        this.model = model;");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    protected void resetVariables() {");
+        for (String variable : variables)
+            out.println("        " + variable + " = 0;");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    public boolean isEnabled(int edge) {");
+        out.println("        switch (edge) {");
+        for (int edge = 0; edge < edges.size(); edge++)
+            if (edges.get(edge).guard != null)
+                out.printf("            case %d: return %s; // %s%n", edge, edges.get(edge).guard, edges.get(edge).id);
+        out.println("            default: return true;");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    public int[] getVariables() {");
+        out.println("        return new int[] {" + join(variables, ", ") + "};");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    public void setVariables(int[] values) {");
+        int index = 0;
+        for (String variable : variables)
+            out.println("        " + variable + " = values[" + index++ + "];");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    protected void performActions(int edge) {");
+        out.println("        switch (edge) {");
+        for (int edge = 0; edge < edges.size(); edge++) {
+            Edge e = edges.get(edge);
+            if (e.actions.isEmpty())
+                continue;
+
+            out.printf("            case %d: // %s%n", edge, e.label);
+            for (String action : e.actions)
+                out.println("                " + action + ";");
+            out.println("                break;");
+        }
+        out.println("        }");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    protected void performEdge(int edge) throws Exception {");
+        out.println("        switch (edge) {");
+        for (int edge = 0; edge < edges.size(); edge++) {
+            Edge e = edges.get(edge);
+            if (e.name == null)
+                continue;
+
+            out.printf("            case %d: // %s%n", edge, e.id);
+            out.println("                model." + e.name + "();");
+            out.println("                break;");
+        }
+        out.println("        }");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    protected void performVertex(int vertex) throws Exception {");
+        out.println("        switch (vertex) {");
+        for (int vertex = 0; vertex < vertices.size(); vertex++) {
+            if (vertex == start)
+                continue;
+
+            out.printf("            case %d:%n", vertex);
+            out.println("                model." + vertices.get(vertex) + "();");
+            out.println("                break;");
+        }
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("}");
+    }
+
+    private String table(boolean sources) {
+        List<String> values = new ArrayList<>();
+        for (Edge edge : edges)
+            values.add(String.valueOf(sources ? edge.source : edge.target));
+        return "{" + join(values, ", ") + "}";
+    }
+
+    private static String quote(String text) {
+        return text == null ? "null" : "\"" + text + "\"";
+    }
+
+    private static String join(Collection<String> values, String separator) {
+        StringBuilder builder = new StringBuilder();
+        for (String value : values) {
+            if (builder.length() > 0)
+                builder.append(separator);
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Main entry point for compiling a model.
+     *
+     * @param args model file and output file
+     * @throws IOException if the model cannot be read or is invalid, or the output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ModelCompiler <model.graphml> <Dispatch.java>");
+            System.exit(2);
+        }
+
+        ModelCompiler compiler = new ModelCompiler(new File(args[0]));
+        compiler.checkMethods();
+
+        File output = new File(args[1]);
+        String className = output.getName().replaceFirst("\\.java$", "");
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+            compiler.write(out, className);
+        }
+        System.err.printf("Compiled %d vertices and %d edges into %s.%n", compiler.vertices.size(), compiler.edges.size(), output);
+    }
+
+}
@@ -0,0 +1,211 @@
+package mastermind.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Walks a {@link CompiledModel} until every edge has been covered, the counterpart of GraphWalker's
+ * {@code A_StarPathGenerator} with {@code EdgeCoverage(1.0)}.
+ *
+ * From every vertex the runner takes an enabled edge that has not been covered yet; if there is none, it heads for the
+ * nearest uncovered edge along the shortest path, taking a random enabled edge wherever a guard blocks that path (such
+ * as the pegs to enter before a guess is complete). When a vertex method moves the model to another vertex along an
+ * existing edge, that edge counts as covered too.
+ *
+ * Several runners, each walking its own instance of the model, can share a {@link CoverageMap}: the edges are then
+ * partitioned among them. A runner heads for the uncovered edges of its own part first and for those of the others
+ * only when all of its own have been covered, and all runners stop as soon as the shared map is complete.
+ */
+public final class ModelRunner {
+
+    private final CompiledModel model;
+    private final Random random;
+    private final CoverageMap coverage;
+    private final int worker, workers;
+    private long steps;
+
+    /**
+     * @param model the model to walk; it is reset first
+     * @param random source of the choices between edges
+     */
+    public ModelRunner(CompiledModel model, Random random) {
+        this(model, random, new CoverageMap(model.getEdgeCount()), 0, 1);
+    }
+
+    /**
+     * @param model the model to walk; it is reset first
+     * @param random source of the choices between edges
+     * @param coverage coverage shared with the other runners
+     * @param worker index of this runner, from 0
+     * @param workers number of runners sharing the coverage
+     */
+    public ModelRunner(CompiledModel model, Random random, CoverageMap coverage, int worker, int workers) {
+        this.model = model;
+        this.random = random;
+        this.coverage = coverage;
+        this.worker = worker;
+        this.workers = workers;
+    }
+
+    /**
+     * Walks the model from its start vertex.
+     *
+     * @param maxSteps maximum number of edges to walk
+     * @return whether all edges have been covered
+     * @throws Exception if a method of the model fails
+     */
+    public boolean run(long maxSteps) throws Exception {
+        model.reset();
+        while (!coverage.isComplete() && steps < maxSteps) {
+            int edge = nextEdge(model.getCurrentVertex());
+            if (edge < 0)
+                break; // A dead end
+
+            step(edge);
+        }
+
+        return coverage.isComplete();
+    }
+
+    /**
+     * Walks a single edge from the current vertex and records it in the coverage.
+     *
+     * @param edge an enabled edge of the current vertex
+     * @return the edge along which the vertex method has moved the model to another vertex, or -1 if it has not
+     * @throws Exception if a method of the model fails
+     */
+    public int step(int edge) throws Exception {
+        int target = model.getTarget(edge);
+        coverage.cover(edge);
+        steps++;
+        int vertex = model.walk(edge);
+        if (vertex == target)
+            return -1;
+
+        int jump = findEdge(target, vertex);
+        if (jump >= 0)
+            coverage.cover(jump);
+        return jump;
+    }
+
+    /**
+     * Walks a planned path from the start vertex, such as one of those of a {@link PathPlanner}. A vertex method that
+     * moves the model along the next edge of the path counts as walking it.
+     *
+     * @param path the edges to walk
+     * @return whether the whole path has been walked; {@code false} if the model has diverged from it
+     * @throws Exception if a method of the model fails
+     */
+    public boolean follow(int[] path) throws Exception {
+        model.reset();
+        for (int i = 0; i < path.length; i++) {
+            int edge = path[i];
+            if (model.getSource(edge) != model.getCurrentVertex() || !model.isEnabled(edge))
+                return false;
+
+            int jump = step(edge);
+            if (jump >= 0 && i + 1 < path.length && path[i + 1] == jump)
+                i++;
+        }
+
+        return true;
+    }
+
+    private boolean isOwn(int edge) {
+        return edge % workers == worker;
+    }
+
+    private int findEdge(int source, int target) {
+        for (int edge : model.getOutgoing(source))
+            if (model.getTarget(edge) == target)
+                return edge;
+        return -1;
+    }
+
+    /**
+     * Chooses the edge to walk from the given vertex.
+     *
+     * @return the edge, or -1 if no edge is enabled
+     */
+    private int nextEdge(int vertex) {
+        int[] outgoing = model.getOutgoing(vertex);
+        int[] enabled = new int[outgoing.length];
+        int count = 0, uncovered = 0, own = 0;
+        for (int edge : outgoing) {
+            if (!model.isEnabled(edge))
+                continue;
+            enabled[count++] = edge;
+            if (!coverage.isCovered(edge)) { // Uncovered edges go first, those of this runner before all others
+                enabled[count - 1] = enabled[uncovered];
+                enabled[uncovered++] = edge;
+                if (isOwn(edge)) {
+                    enabled[uncovered - 1] = enabled[own];
+                    enabled[own++] = edge;
+                }
+            }
+        }
+
+        if (count == 0)
+            return -1;
+        if (uncovered > 0)
+            return enabled[random.nextInt(own > 0 ? own : uncovered)];
+
+        int edge = towardsUncovered(vertex, true);
+        if (edge < 0)
+            edge = towardsUncovered(vertex, false);
+        if (edge >= 0 && model.isEnabled(edge))
+            return edge;
+        return enabled[random.nextInt(count)];
+    }
+
+    /**
+     * Finds the first edge of a shortest path from the given vertex to an uncovered edge, disregarding guards.
+     *
+     * @param own whether to look for uncovered edges of this runner only
+     * @return the edge, or -1 if no such edge can be reached
+     */
+    private int towardsUncovered(int vertex, boolean own) {
+        int[] first = new int[model.getVertexCount()];
+        Arrays.fill(first, -2);
+        first[vertex] = -1;
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(vertex);
+        while (!queue.isEmpty()) {
+            int current = queue.remove();
+            for (int edge : model.getOutgoing(current)) {
+                int via = first[current] < 0 ? edge : first[current];
+                if (!coverage.isCovered(edge) && (!own || isOwn(edge)))
+                    return via;
+
+                int target = model.getTarget(edge);
+                if (first[target] == -2) {
+                    first[target] = via;
+                    queue.add(target);
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the number of edges walked by this runner
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    public CoverageMap getCoverage() {
+        return coverage;
+    }
+
+    /**
+     * @return a summary of the walk, such as {@code Edges covered: 15 of 15 (100%); steps: 231}
+     */
+    public String getStatistics() {
+        return coverage + "; steps: " + steps;
+    }
+
+}
@@ -0,0 +1,151 @@
+package mastermind.model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A directory of planned paths, so that they are only planned again when the model or the planner changes.
+ *
+ * The paths for a model are stored in a file named after the model and the key; the key is the SHA-256 hash of the
+ * model file and the configuration of the planner. A file starts with {@link #MAGIC}, {@link #VERSION} and the key,
+ * followed by the number of paths and every path as its length and edge numbers, all numbers as variable-length
+ * integers.
+ */
+public final class PathCache {
+
+    static final int MAGIC = 0x4D4D5041; // "MMPA"
+    static final int VERSION = 1;
+
+    private final File directory;
+
+    /**
+     * @param directory directory to keep the paths in; created when needed
+     */
+    public PathCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cached paths for a model, planning and storing them if there are none yet.
+     *
+     * @param model model file
+     * @param planner planner for the compiled model
+     * @return the paths
+     * @throws IOException if the model cannot be read
+     */
+    public List<int[]> getPaths(File model, PathPlanner planner) throws IOException {
+        String key = key(model, planner.getConfiguration());
+        File file = new File(directory, model.getName().replaceFirst("\\.[^.]*$", "") + "-" + key.substring(0, 16) + ".paths");
+
+        List<int[]> paths = load(file, key);
+        if (paths == null) {
+            paths = planner.plan();
+            try {
+                store(file, key, paths);
+            } catch (IOException e) {
+                System.err.println("Cannot store planned paths in " + file + ": " + e.getMessage());
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * @param model model file
+     * @param configuration configuration of the planner
+     * @return the key of the paths for the model and configuration
+     * @throws IOException if the model cannot be read
+     */
+    static String key(File model, String configuration) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JVM supports SHA-256
+        }
+        digest.update(Files.readAllBytes(model.toPath()));
+        digest.update((byte) 0);
+        digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest())
+            key.append(String.format("%02x", b));
+        return key.toString();
+    }
+
+    /**
+     * @return the paths in the file, or {@code null} if there is no such file or it has another key or is corrupt
+     */
+    private static List<int[]> load(File file, String key) {
+        if (!file.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION || !in.readUTF().equals(key))
+                return null;
+
+            List<int[]> paths = new ArrayList<>();
+            for (int count = readNumber(in); count > 0; count--) {
+                int[] path = new int[readNumber(in)];
+                for (int i = 0; i < path.length; i++)
+                    path[i] = readNumber(in);
+                paths.add(path);
+            }
+            return paths;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the paths to a temporary file first and then moves it into place, so that concurrent runs never read a
+     * partial file.
+     */
+    private void store(File file, String key, List<int[]> paths) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create directory " + directory);
+
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeUTF(key);
+                writeNumber(out, paths.size());
+                for (int[] path : paths) {
+                    writeNumber(out, path.length);
+                    for (int edge : path)
+                        writeNumber(out, edge);
+                }
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    private static void writeNumber(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readNumber(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+}
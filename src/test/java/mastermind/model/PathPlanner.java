@@ -0,0 +1,120 @@
+package mastermind.model;
+
+import java.util.*;
+
+/**
+ * Plans paths that cover every edge of a {@link CompiledModel}, without running the program.
+ *
+ * Every path starts at the start vertex and is the shortest path that ends with an edge no earlier path has covered;
+ * the paths are found by a breadth-first search over the states of the model (its vertex and the values of its
+ * variables), simulating guards and actions. As every path starts from scratch, it can be run on its own, and the
+ * paths share their prefixes, such as starting the program and choosing a mode.
+ *
+ * The plan does not know which vertex a vertex method moves the model to, such as {@code v_FinalPeg} after a guess; a
+ * path that depends on that may diverge when it is run (see {@link ModelRunner#follow(int[])}).
+ */
+public final class PathPlanner {
+
+    private static final int MAX_STATES = 1 << 16; // States to search per path
+
+    private final CompiledModel model;
+    private final int maxLength;
+
+    /**
+     * @param model the model; its state is reset after planning
+     * @param maxLength maximum number of edges of a path
+     */
+    public PathPlanner(CompiledModel model, int maxLength) {
+        this.model = model;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return a description of the planner and its settings, which identifies the paths it plans for a given model
+     */
+    public String getConfiguration() {
+        return "shortest-paths;length=" + maxLength;
+    }
+
+    private static final class State {
+        final int vertex, edge, length;
+        final int[] variables;
+        final State parent;
+
+        State(int vertex, int[] variables, int edge, State parent) {
+            this.vertex = vertex;
+            this.variables = variables;
+            this.edge = edge;
+            this.parent = parent;
+            this.length = parent == null ? 0 : parent.length + 1;
+        }
+
+        String key() {
+            return vertex + Arrays.toString(variables);
+        }
+    }
+
+    /**
+     * @return the paths, as edge numbers; edges that cannot be reached within the maximum length are left out
+     */
+    public List<int[]> plan() {
+        boolean[] covered = new boolean[model.getEdgeCount()];
+        List<int[]> paths = new ArrayList<>();
+        for (int edge = 0; edge < covered.length; edge++) {
+            if (covered[edge])
+                continue;
+
+            int[] path = shortestPath(edge);
+            if (path == null)
+                continue;
+
+            for (int step : path)
+                covered[step] = true;
+            paths.add(path);
+        }
+
+        model.reset();
+        return paths;
+    }
+
+    /**
+     * @return the shortest path from the start vertex that ends with the given edge, or {@code null} if there is none
+     */
+    private int[] shortestPath(int target) {
+        model.reset();
+        State start = new State(model.getCurrentVertex(), model.getVariables(), -1, null);
+        Queue<State> queue = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        queue.add(start);
+        seen.add(start.key());
+        while (!queue.isEmpty() && seen.size() < MAX_STATES) {
+            State state = queue.remove();
+            if (state.length >= maxLength)
+                continue;
+
+            for (int edge : model.getOutgoing(state.vertex)) {
+                model.setCurrentVertex(state.vertex);
+                model.setVariables(state.variables);
+                if (!model.isEnabled(edge))
+                    continue;
+                if (edge == target)
+                    return path(new State(state.vertex, state.variables, edge, state));
+
+                model.simulate(edge);
+                State next = new State(model.getCurrentVertex(), model.getVariables(), edge, state);
+                if (seen.add(next.key()))
+                    queue.add(next);
+            }
+        }
+
+        return null;
+    }
+
+    private static int[] path(State last) {
+        int[] path = new int[last.length];
+        for (State state = last; state.parent != null; state = state.parent)
+            path[state.length - 1] = state.edge;
+        return path;
+    }
+
+}
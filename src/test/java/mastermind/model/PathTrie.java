@@ -0,0 +1,181 @@
+package mastermind.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Runs planned paths arranged in a prefix trie, so that a prefix shared by several paths is walked once rather than
+ * once per path.
+ *
+ * The trie is run depth first in a single live program. A program cannot be forked, so after the end of a path the
+ * runner continues at a branch point that still has paths to run if the program happens to be in the state of that
+ * branch point: the same vertex with the same values of the model variables, as after a game that has returned to the
+ * main menu. Only otherwise is the program restarted and the prefix of the branch point walked again. A subtree is
+ * abandoned when the program diverges from the plan on the way to it (see {@link ModelRunner#follow(int[])}).
+ */
+public final class PathTrie {
+
+    private static final class Node {
+        final Node parent;
+        final int edge;
+        final int vertex;
+        final int[] variables; // State of the model after the edge, as planned
+        final List<Node> children = new ArrayList<>();
+        boolean entered;
+
+        Node(Node parent, int edge, int vertex, int[] variables) {
+            this.parent = parent;
+            this.edge = edge;
+            this.vertex = vertex;
+            this.variables = variables;
+        }
+
+        Node next() {
+            for (Node child : children)
+                if (!child.entered)
+                    return child;
+            return null;
+        }
+
+        Node child(int edge) {
+            for (Node child : children)
+                if (child.edge == edge)
+                    return child;
+            return null;
+        }
+
+        int[] path() {
+            List<Integer> edges = new ArrayList<>();
+            for (Node node = this; node.parent != null; node = node.parent)
+                edges.add(node.edge);
+
+            int[] path = new int[edges.size()];
+            for (int i = 0; i < path.length; i++)
+                path[i] = edges.get(path.length - 1 - i);
+            return path;
+        }
+    }
+
+    private final CompiledModel model;
+    private final Node root;
+    private long plannedSteps;
+    private int restarts, reuses, abandoned;
+
+    /**
+     * @param model the model the paths have been planned for; its state is reset afterwards
+     * @param paths the paths, each from the start vertex
+     */
+    public PathTrie(CompiledModel model, List<int[]> paths) {
+        this.model = model;
+        model.reset();
+        root = new Node(null, -1, model.getCurrentVertex(), model.getVariables());
+        for (int[] path : paths) {
+            plannedSteps += path.length;
+            Node node = root;
+            for (int edge : path) {
+                Node child = node.child(edge);
+                if (child == null) {
+                    model.setCurrentVertex(node.vertex);
+                    model.setVariables(node.variables);
+                    model.simulate(edge);
+                    child = new Node(node, edge, model.getCurrentVertex(), model.getVariables());
+                    node.children.add(child);
+                }
+                node = child;
+            }
+        }
+        model.reset();
+    }
+
+    private boolean isLive(Node node) {
+        return model.getCurrentVertex() == node.vertex && Arrays.equals(model.getVariables(), node.variables);
+    }
+
+    /**
+     * Runs all paths of the trie.
+     *
+     * @param runner runner of the model, which records the coverage
+     * @throws Exception if a method of the model fails
+     */
+    public void run(ModelRunner runner) throws Exception {
+        Deque<Node> pending = new ArrayDeque<>(); // Nodes with children left to run, deepest first
+        pending.push(root);
+        Node live = null; // The node whose state the program is in, if any
+        while (!pending.isEmpty()) {
+            Node node = pending.peek();
+            if (node.next() == null) {
+                pending.pop();
+                continue;
+            }
+
+            if (node != live) {
+                Node reusable = null;
+                if (model.getCurrentVertex() != model.getStartVertex()) // The program is running
+                    for (Node candidate : pending)
+                        if (candidate.next() != null && isLive(candidate)) {
+                            reusable = candidate;
+                            break;
+                        }
+
+                if (reusable != null) {
+                    node = reusable;
+                    reuses++;
+                } else {
+                    if (node != root)
+                        restarts++;
+                    if (!runner.follow(node.path()) || !isLive(node)) {
+                        abandoned++;
+                        pending.remove(node);
+                        live = null;
+                        continue;
+                    }
+                }
+            }
+
+            Node child = node.next();
+            child.entered = true;
+            live = null;
+            if (!model.isEnabled(child.edge)) {
+                abandoned++;
+                continue;
+            }
+
+            int jump = runner.step(child.edge);
+            Node next = child;
+            if (jump >= 0) {
+                next = child.child(jump); // The vertex method has taken the next edge itself
+                if (next != null)
+                    next.entered = true;
+            }
+
+            if (next != null) {
+                pending.push(child);
+                if (next != child)
+                    pending.push(next);
+                if (isLive(next))
+                    live = next;
+            } else if (!child.children.isEmpty()) {
+                abandoned++; // The program has moved elsewhere than planned
+            }
+        }
+    }
+
+    /**
+     * @return the number of edges of all paths together
+     */
+    public long getPlannedSteps() {
+        return plannedSteps;
+    }
+
+    /**
+     * @return a summary such as {@code planned steps: 73; restarts: 2; reused states: 3; abandoned: 1}
+     */
+    public String getStatistics() {
+        return String.format("planned steps: %d; restarts: %d; reused states: %d; abandoned: %d",
+                plannedSteps, restarts, reuses, abandoned);
+    }
+
+}
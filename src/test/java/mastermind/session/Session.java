@@ -0,0 +1,401 @@
+package mastermind.session;
+
+import java.io.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import mastermind.metrics.LatencyHistogram;
+import mastermind.metrics.Metrics;
+import mastermind.metrics.TimeoutModel;
+import mastermind.stdio.Pipe;
+import mastermind.stdio.StdioRouter;
+import mastermind.trace.TraceWriter;
+
+/**
+ * A single run of a program within a {@link SessionEngine}.
+ *
+ * The program runs on a thread of the engine with its stdout and stdin bound to pipes; the owner of the session reads
+ * the output and writes the input. Closing the session stops the program, after which its pipes are reused by later
+ * sessions.
+ *
+ * On a bounded pool, the program may have to wait for a free thread; reads wait for it to start before their timeout
+ * begins, so that a queued program does not appear to produce no output.
+ */
+public final class Session implements Closeable {
+
+    private static final LatencyHistogram ROUND_TRIP = Metrics.getShared().histogram("session.roundtrip");
+    private static final LatencyHistogram IDLE       = Metrics.getShared().histogram("session.idle");
+    private static final LatencyHistogram READ       = Metrics.getShared().histogram("session.read");
+
+    private final SessionEngine engine;
+    private final Pipe stdout, stdin;
+    private final Reader reader;
+    private final PrintWriter writer;
+    private final char[] readBuffer;
+    private final StringBuilder pending = new StringBuilder(); // Output read by readLine() but not returned yet
+
+    private final CountDownLatch started = new CountDownLatch(1); // Opened once the program runs, or the session closes
+    private volatile Future<?> future;
+    private volatile Throwable exception;
+    private volatile boolean terminated;
+    private volatile long lastActive;
+    private long inputTime; // Of the input whose output has not been read yet; 0 if none
+    private long lastGap; // Longest wait for output during the last read, in nanoseconds; -1 if not measured
+    private boolean timedOut; // Whether the last read has stopped at its timeout
+    private TraceWriter trace;
+    private int traceSession;
+    private volatile boolean closing;
+    private boolean closed, reusable, released;
+
+    Session(SessionEngine engine, Pipe stdout, Pipe stdin, int bufferSize) {
+        this.engine = engine;
+        this.stdout = stdout;
+        this.stdin = stdin;
+        this.reader = new InputStreamReader(stdout.getSink());
+        this.writer = new PrintWriter(stdin.getSource(), true);
+        this.readBuffer = new char[bufferSize];
+        this.lastActive = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates the task that runs the program on a thread of the engine.
+     */
+    Runnable createTask(final SessionEngine.Program program) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                lastActive = System.currentTimeMillis(); // Idle only from now on
+                started.countDown();
+                PrintStream programStdout = new PrintStream(stdout.getSource(), true);
+                StdioRouter.bind(programStdout, stdin.getSink());
+                try {
+                    program.run();
+                } catch (Throwable t) {
+                    exception = t;
+                } finally {
+                    StdioRouter.unbind();
+                    programStdout.close();
+                    stdin.closeSink(); // Wakes up anyone waiting for the program to request input
+                    terminated = true; // Only now may the pipes be recycled
+                    release();
+                }
+            }
+        };
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Records all further input and output of this session in the shared trace, if tracing is enabled.
+     *
+     * @param name name of the harness
+     * @param seed seed of the harness's random choices
+     */
+    public void startTrace(String name, long seed) {
+        trace = TraceWriter.getShared();
+        if (trace != null)
+            traceSession = trace.startSession(name, seed);
+    }
+
+    /**
+     * Waits until the program has started running on a thread of the engine.
+     *
+     * @return whether the session is still open
+     */
+    private boolean awaitStart() {
+        try {
+            started.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !closing;
+    }
+
+    /**
+     * @return whether the program has started running, or the session has been closed before
+     */
+    boolean isStarted() {
+        return started.getCount() == 0;
+    }
+
+    /**
+     * Reads all lines from the program's output.
+     *
+     * It stops reading as soon as the program waits for input or has terminated, or if no new data has been received
+     * for the given timeout duration, which begins once the program has started. The time spent waiting and reading is recorded in the shared {@link Metrics}, as
+     * well as the round trip from the first line of input written since the previous read.
+     *
+     * @param timeout time without new output after which to stop reading, in milliseconds
+     * @return output lines
+     */
+    public String[] readLines(long timeout) {
+        lastGap = -1;
+        timedOut = false;
+        if (!awaitStart())
+            return new String[0];
+        lastActive = System.currentTimeMillis();
+
+        StringBuilder builder = new StringBuilder(pending);
+        pending.setLength(0);
+        long idle = 0, read = 0, gap = 0;
+        try {
+            long start = System.currentTimeMillis();
+            long gapStart = System.nanoTime();
+
+            while (true) {
+                // Once the program waits for input (or has terminated), all of its output is in the pipe
+                boolean done = stdin.isAwaitingInput() || terminated;
+                boolean received = false;
+                long readStart = System.nanoTime();
+                while (reader.ready()) {
+                    int count = reader.read(readBuffer);
+                    if (count == -1) // End of stream; generally should not happen
+                        break;
+                    builder.append(readBuffer, 0, count);
+                    received = true;
+                }
+                read += System.nanoTime() - readStart;
+
+                if (received || done) {
+                    gap = Math.max(gap, readStart - gapStart);
+                    gapStart = readStart;
+                }
+                if (done) {
+                    lastGap = gap;
+                    break;
+                }
+
+                if (received)
+                    start = System.currentTimeMillis();
+
+                long remaining = start + timeout - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    timedOut = true;
+                    break;
+                }
+
+                long idleStart = System.nanoTime();
+                stdin.awaitInput(stdout, remaining); // Wakes up on new output as well
+                idle += System.nanoTime() - idleStart;
+            }
+        } catch (IOException ignored) {
+            // The pipe has been closed; the owner finds out through isTerminated()
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        IDLE.record(idle);
+        READ.record(read);
+        if (inputTime != 0) {
+            ROUND_TRIP.recordSince(inputTime);
+            inputTime = 0;
+        }
+
+        String[] lines = builder.length() > 0 ? builder.toString().split("\r?\n") : new String[0];
+        if (trace != null)
+            trace.output(traceSession, lines);
+
+        return lines;
+    }
+
+    /**
+     * Reads the next line of the program's output as soon as it is complete, leaving any further output for later
+     * reads. Once the program waits for input or has terminated, the rest of its output counts as a line even without
+     * a line break, as a prompt does.
+     *
+     * @param timeout time without new output after which to stop reading, in milliseconds
+     * @return the line, or {@code null} if there is no more output before the program waits for input, terminates, or
+     *         the timeout expires
+     */
+    public String readLine(long timeout) {
+        timedOut = false;
+        if (!awaitStart())
+            return null;
+        lastActive = System.currentTimeMillis();
+
+        String line = null;
+        long idle = 0, read = 0;
+        try {
+            long start = System.currentTimeMillis();
+            while (true) {
+                int end = pending.indexOf("\n");
+                if (end >= 0) {
+                    line = pending.substring(0, end > 0 && pending.charAt(end - 1) == '\r' ? end - 1 : end);
+                    pending.delete(0, end + 1);
+                    break;
+                }
+
+                boolean done = stdin.isAwaitingInput() || terminated;
+                boolean received = false;
+                long readStart = System.nanoTime();
+                while (reader.ready()) {
+                    int count = reader.read(readBuffer);
+                    if (count == -1)
+                        break;
+                    pending.append(readBuffer, 0, count);
+                    received = true;
+                }
+                read += System.nanoTime() - readStart;
+                if (received) {
+                    start = System.currentTimeMillis();
+                    continue;
+                }
+
+                long remaining = start + timeout - System.currentTimeMillis();
+                if (done || remaining <= 0) {
+                    timedOut = !done;
+                    if (pending.length() > 0) {
+                        line = pending.toString();
+                        pending.setLength(0);
+                    }
+                    break;
+                }
+
+                long idleStart = System.nanoTime();
+                stdin.awaitInput(stdout, remaining); // Wakes up on new output as well
+                idle += System.nanoTime() - idleStart;
+            }
+        } catch (IOException ignored) {
+            // The pipe has been closed; the owner finds out through isTerminated()
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        IDLE.record(idle);
+        READ.record(read);
+        if (line != null) {
+            if (inputTime != 0) {
+                ROUND_TRIP.recordSince(inputTime);
+                inputTime = 0;
+            }
+            if (trace != null)
+                trace.output(traceSession, new String[] {line});
+        }
+
+        return line;
+    }
+
+    /**
+     * Reads the next line of the program's output, waiting no longer for new output than the timeout model has learned
+     * to be needed in the given step. If the read times out, the timeout is recorded in the model.
+     *
+     * @param timeouts the timeout model
+     * @param key the step
+     * @return the line, or {@code null} if there is none
+     *
+     * @see #readLine(long)
+     */
+    public String readLine(TimeoutModel timeouts, String key) {
+        String line = readLine(timeouts.getTimeout(key));
+        if (timedOut)
+            timeouts.recordTimeout(key);
+        return line;
+    }
+
+    /**
+     * Reads all lines from the program's output, waiting no longer for new output than the timeout model has learned
+     * to be needed in the given step. The longest wait for output is recorded in the model; if the read times out
+     * instead, the timeout is, so that the model learns longer timeouts again.
+     *
+     * @param timeouts the timeout model
+     * @param key the step
+     * @return output lines
+     *
+     * @see #readLines(long)
+     */
+    public String[] readLines(TimeoutModel timeouts, String key) {
+        String[] lines = readLines(timeouts.getTimeout(key));
+        if (lastGap >= 0)
+            timeouts.record(key, lastGap);
+        else if (timedOut)
+            timeouts.recordTimeout(key);
+        return lines;
+    }
+
+    /**
+     * Presents the program with the given line of input.
+     *
+     * @param line line of input
+     */
+    public void writeLine(String line) {
+        if (closing)
+            return;
+        lastActive = System.currentTimeMillis();
+        writer.println(line);
+        if (trace != null)
+            trace.input(traceSession, line);
+        if (inputTime == 0)
+            inputTime = System.nanoTime();
+    }
+
+    /**
+     * @return whether the program has terminated, either normally or by an exception
+     */
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * @return the exception that terminated the program, or {@code null}
+     */
+    public Throwable getException() {
+        return exception;
+    }
+
+    long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * Stops the program if it is still running and releases the session.
+     */
+    @Override
+    public void close() {
+        close(true);
+    }
+
+    /**
+     * @param reusePipes whether the pipes may be reused; not when the owner might still be using the session
+     */
+    void close(boolean reusePipes) {
+        synchronized (this) {
+            if (closing)
+                return;
+            closing = true;
+        }
+
+        if (trace != null)
+            trace.endSession(traceSession);
+        writer.close(); // A program blocked on its stdin sees the end of the input
+        stdout.closeSink(); // A program blocked on a full stdout fails to write
+        Future<?> future = this.future;
+        if (future != null)
+            future.cancel(true);
+        started.countDown(); // The program may never start now
+        engine.remove(this);
+
+        synchronized (this) {
+            closed = true; // Only now may the pipes be recycled
+            reusable = reusePipes;
+        }
+        release();
+    }
+
+    /**
+     * Returns the pipes to the engine once the session is closed and the program has stopped using them.
+     */
+    private void release() {
+        synchronized (this) {
+            if (!closed || !terminated || released)
+                return;
+            released = true;
+            if (!reusable)
+                return;
+        }
+
+        engine.recycle(stdout, stdin);
+    }
+
+}
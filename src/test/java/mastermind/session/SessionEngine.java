@@ -0,0 +1,178 @@
+package mastermind.session;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import mastermind.log.Log;
+import mastermind.stdio.Pipe;
+import mastermind.stdio.StdioRouter;
+
+/**
+ * Runs programs as {@link Session}s within the current JVM.
+ *
+ * Programs run on a bounded pool of threads and their pipes are reused, so a long campaign of sessions runs with a
+ * constant number of threads and constant memory. Sessions that have not been used for the idle timeout (typically
+ * because their owner has abandoned them) are closed by a reaper.
+ *
+ * In virtual thread mode (see {@link VirtualThreads}) every program runs on its own virtual thread instead, so that
+ * thousands of programs blocked on their stdin fit in a single JVM.
+ */
+public final class SessionEngine {
+
+    private static final int  THREADS      = Integer.parseInt(System.getProperty("blackbox.programs",
+            System.getProperty("blackbox.threads", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+    private static final int  BUFFER_SIZE  = Integer.parseInt(System.getProperty("blackbox.buffer", "8129"));
+    private static final long IDLE_TIMEOUT = Long.parseLong(  System.getProperty("blackbox.idle"  , "60000"));
+
+    private static final Log log = Log.err();
+
+    private static SessionEngine shared;
+    private static int reserved; // Programs that the shared engine must be able to run at the same time
+
+    private final int threads;
+    private final int bufferSize;
+    private final long idleTimeout;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService reaper;
+    private final BlockingQueue<Pipe[]> pipes;
+    private final Set<Session> sessions = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+
+    /**
+     * A program that uses the standard streams.
+     */
+    public interface Program {
+        void run() throws Exception;
+    }
+
+    /**
+     * @param threads maximum number of programs running at the same time; ignored for virtual threads
+     * @param bufferSize size of the pipe buffers
+     * @param idleTimeout time after which an unused session is closed, in milliseconds
+     * @param virtual whether to run every program on its own virtual thread
+     */
+    public SessionEngine(int threads, int bufferSize, long idleTimeout, boolean virtual) {
+        this.threads = virtual ? Integer.MAX_VALUE : threads;
+        this.bufferSize = bufferSize;
+        this.idleTimeout = idleTimeout;
+        this.pipes = new ArrayBlockingQueue<>(threads);
+
+        if (virtual) {
+            executor = VirtualThreads.newPerTaskExecutor();
+        } else {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "program-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "session-reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(idleTimeout / 4, 1);
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reap();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the engine shared by all harnesses, configured by the {@code blackbox.*} system properties
+     */
+    public static synchronized SessionEngine getShared() {
+        if (shared == null)
+            shared = new SessionEngine(Math.max(THREADS, reserved), BUFFER_SIZE, IDLE_TIMEOUT, VirtualThreads.isEnabled());
+
+        return shared;
+    }
+
+    /**
+     * Makes the shared engine run at least the given number of programs at the same time, typically one for each
+     * harness thread that drives a session. With fewer threads, the programs of some drivers would wait for others to
+     * finish their whole session.
+     *
+     * @param programs number of programs
+     * @throws IllegalStateException if the shared engine has already been created with fewer threads
+     */
+    public static synchronized void reserve(int programs) {
+        if (shared != null && shared.threads < programs)
+            throw new IllegalStateException("The shared session engine runs only " + shared.threads +
+                    " programs at the same time, not " + programs + "; set -Dblackbox.programs");
+
+        reserved = Math.max(reserved, programs);
+    }
+
+    /**
+     * Starts running the given program in a new session. On a bounded pool, the program waits for a free thread if all
+     * are in use; reads of the session wait for it as well, without their timeout running.
+     *
+     * @param program the program to run
+     * @return the session
+     */
+    public Session start(Program program) {
+        StdioRouter.install();
+
+        Pipe[] pair = pipes.poll();
+        if (pair == null) {
+            Pipe stdout = new Pipe(bufferSize);
+            pair = new Pipe[] { stdout, new Pipe(bufferSize, stdout) }; // Shared lock; see Session#readLines
+        }
+
+        Session session = new Session(this, pair[0], pair[1], bufferSize);
+        sessions.add(session);
+        session.setFuture(executor.submit(session.createTask(program)));
+        return session;
+    }
+
+    void remove(Session session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Makes the pipes of a session available to later sessions.
+     */
+    void recycle(Pipe stdout, Pipe stdin) {
+        stdout.reset();
+        stdin.reset();
+        pipes.offer(new Pipe[] { stdout, stdin });
+    }
+
+    private void reap() {
+        long now = System.currentTimeMillis();
+        for (Session session : sessions) {
+            if (session.isStarted() && now - session.getLastActive() > idleTimeout) {
+                log.warn("Closing idle session" + (session.isTerminated() ? "" : " and stopping its program"));
+                session.close(false);
+            }
+        }
+    }
+
+    /**
+     * @return the number of sessions that have not been closed yet
+     */
+    public int getOpenSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Closes all sessions and stops the threads of the engine.
+     */
+    public void shutdown() {
+        reaper.shutdownNow();
+        for (Session session : sessions)
+            session.close();
+        executor.shutdownNow();
+    }
+
+}
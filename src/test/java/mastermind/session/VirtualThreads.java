@@ -0,0 +1,98 @@
+package mastermind.session;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads, which are enabled by {@code -Dblackbox.virtual=true}.
+ *
+ * Virtual threads require Java 21, while the sources are built for older runtimes as well; therefore they are looked up
+ * reflectively. If they are requested but unavailable, platform threads are used instead, unless they are required by
+ * {@code -Dblackbox.virtual=require}, as in the smoke run {@code sbt virtualSmoke}.
+ */
+public final class VirtualThreads {
+
+    private static final String  MODE     = System.getProperty("blackbox.virtual", "false");
+    private static final boolean REQUIRED = MODE.equals("require");
+    private static final boolean VIRTUAL  = REQUIRED || Boolean.parseBoolean(MODE);
+
+    private static final Method NEW_EXECUTOR = lookupExecutorFactory();
+    private static final Method IS_VIRTUAL   = lookupIsVirtual();
+
+    private VirtualThreads() {
+    }
+
+    private static Method lookupExecutorFactory() {
+        if (!VIRTUAL)
+            return null;
+
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            if (REQUIRED)
+                throw new IllegalStateException("Virtual threads are required but not supported by Java " +
+                        System.getProperty("java.version"));
+
+            System.err.println("Virtual threads are not supported by Java " + System.getProperty("java.version") +
+                    "; using platform threads.");
+            return null;
+        }
+    }
+
+    private static Method lookupIsVirtual() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether virtual threads have been requested and are supported
+     */
+    public static boolean isEnabled() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * @return whether virtual threads have been required by {@code -Dblackbox.virtual=require}
+     */
+    public static boolean isRequired() {
+        return REQUIRED;
+    }
+
+    /**
+     * @param thread a thread
+     * @return whether the thread is a virtual thread; always {@code false} before Java 21
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null)
+            return false;
+
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread.
+     *
+     * @return the executor
+     * @throws UnsupportedOperationException if virtual threads are not enabled
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_EXECUTOR == null)
+            throw new UnsupportedOperationException("Virtual threads are not enabled");
+
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Unable to create virtual thread executor", e);
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+package mastermind.solver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * All secret codes of a MasterMind game with a given number of holes and colors.
+ *
+ * Codes are numbered from 0 to {@link #size()}; the color in hole {@code i} is digit {@code i} of the code number in
+ * base {@code colors}. A score (the exact and partial hits of a guess against a code) is encoded as a single number
+ * below {@link #scoreCount()}. If the space is small enough, the scores of all pairs of codes are precomputed.
+ */
+public final class CodeSpace {
+
+    private static final int TABLE_LIMIT = 1 << 22; // Entries; 1296 * 1296 for standard mode fits, 16807 ^ 2 does not
+
+    private static final String HITS = "Your hits: ";
+
+    private static final Map<Long, CodeSpace> spaces = new HashMap<>();
+
+    private final int holes, colors, size;
+    private final byte[] digits; // Color of every hole of every code
+    private final byte[] counts; // Number of pegs of every color of every code
+    private final byte[] table;
+
+    /**
+     * Guesses of the {@link Solver} by the feedback received before them; the strategy is deterministic.
+     */
+    final ConcurrentMap<String, Integer> guesses = new ConcurrentHashMap<>();
+
+    private CodeSpace(int holes, int colors) {
+        this.holes = holes;
+        this.colors = colors;
+
+        int size = 1;
+        for (int i = 0; i < holes; i++)
+            size *= colors;
+        this.size = size;
+
+        digits = new byte[size * holes];
+        counts = new byte[size * colors];
+        for (int code = 0; code < size; code++) {
+            int rest = code;
+            for (int hole = 0; hole < holes; hole++) {
+                int color = rest % colors;
+                rest /= colors;
+                digits[code * holes + hole] = (byte) color;
+                counts[code * colors + color]++;
+            }
+        }
+
+        if ((long) size * size <= TABLE_LIMIT) {
+            table = new byte[size * size];
+            for (int a = 0; a < size; a++)
+                for (int b = 0; b < size; b++)
+                    table[a * size + b] = (byte) computeScore(a, b);
+        } else {
+            table = null;
+        }
+    }
+
+    /**
+     * Returns the code space for the given game, which is shared by all callers.
+     *
+     * @param holes number of holes
+     * @param colors number of colors
+     * @return the code space
+     */
+    public static CodeSpace of(int holes, int colors) {
+        Long key = ((long) holes << 32) | colors;
+        synchronized (spaces) {
+            CodeSpace space = spaces.get(key);
+            if (space == null) {
+                space = new CodeSpace(holes, colors);
+                spaces.put(key, space);
+            }
+            return space;
+        }
+    }
+
+    public int getHoles() {
+        return holes;
+    }
+
+    public int getColors() {
+        return colors;
+    }
+
+    /**
+     * @return the number of codes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of distinct encoded scores
+     */
+    public int scoreCount() {
+        return (holes + 1) * (holes + 1);
+    }
+
+    /**
+     * @param code a code
+     * @param hole a hole, starting at 0
+     * @return the color in the given hole
+     */
+    public int color(int code, int hole) {
+        return digits[code * holes + hole];
+    }
+
+    /**
+     * @param colors the color of every hole
+     * @return the code
+     */
+    public int encode(int[] colors) {
+        int code = 0;
+        for (int hole = holes - 1; hole >= 0; hole--)
+            code = code * this.colors + colors[hole];
+        return code;
+    }
+
+    /**
+     * @param exact number of pegs with the right color in the right hole
+     * @param partial number of pegs with the right color in the wrong hole
+     * @return the encoded score
+     */
+    public int encodeScore(int exact, int partial) {
+        return exact * (holes + 1) + partial;
+    }
+
+    /**
+     * Parses the hits as shown by the game, e.g. {@code "Your hits: H h m m"}: one {@code H} for every exact hit, one
+     * {@code h} for every partial hit and one {@code m} for every miss.
+     *
+     * @param line output line containing the hits
+     * @return the encoded score, or -1 if the hits are missing or malformed
+     */
+    public int parseHits(String line) {
+        int start = line.indexOf(HITS);
+        if (start == -1)
+            return -1;
+        start += HITS.length();
+        if (line.length() < start + 2 * holes - 1)
+            return -1;
+
+        int exact = 0, partial = 0;
+        for (int hole = 0; hole < holes; hole++) {
+            char hit = line.charAt(start + 2 * hole);
+            if (hit == 'H')
+                exact++;
+            else if (hit == 'h')
+                partial++;
+            else if (hit != 'm')
+                return -1;
+
+            if (hole < holes - 1 && line.charAt(start + 2 * hole + 1) != ' ')
+                return -1;
+        }
+
+        return encodeScore(exact, partial);
+    }
+
+    /**
+     * Scores a guess against a code. The score is symmetric.
+     *
+     * @param guess the guess
+     * @param code the code
+     * @return the encoded score
+     */
+    public int score(int guess, int code) {
+        return table != null ? table[guess * size + code] : computeScore(guess, code);
+    }
+
+    private int computeScore(int a, int b) {
+        int exact = 0;
+        for (int hole = 0; hole < holes; hole++)
+            if (digits[a * holes + hole] == digits[b * holes + hole])
+                exact++;
+
+        int common = 0;
+        for (int color = 0; color < colors; color++)
+            common += Math.min(counts[a * colors + color], counts[b * colors + color]);
+
+        return encodeScore(exact, common - exact);
+    }
+
+}
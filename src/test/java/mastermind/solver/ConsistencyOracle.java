@@ -0,0 +1,93 @@
+package mastermind.solver;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the set of secret codes that are consistent with all feedback of a game so far.
+ *
+ * The set is a bitset over the whole {@link CodeSpace}, which is filtered incrementally: every guess only visits the
+ * codes that were still consistent. Once the set is empty, the feedback contradicts itself, which means that the
+ * program under test has reported wrong hits.
+ */
+public final class ConsistencyOracle {
+
+    private final CodeSpace space;
+    private final long[] consistent;
+    private int count;
+
+    /**
+     * @param space codes of the game
+     */
+    public ConsistencyOracle(CodeSpace space) {
+        this.space = space;
+        consistent = new long[(space.size() + 63) / 64];
+        reset();
+    }
+
+    /**
+     * Starts a new game, for which every code is consistent.
+     */
+    public void reset() {
+        Arrays.fill(consistent, -1L);
+        int unused = consistent.length * 64 - space.size();
+        if (unused > 0)
+            consistent[consistent.length - 1] = -1L >>> unused;
+        count = space.size();
+    }
+
+    /**
+     * Removes the codes that are inconsistent with the feedback on a guess.
+     *
+     * @param guess the guess
+     * @param score the encoded score (see {@link CodeSpace#encodeScore(int, int)}), or -1 if the hits are malformed
+     * @return whether some code is still consistent with all feedback
+     */
+    public boolean addFeedback(int guess, int score) {
+        if (score < 0) {
+            Arrays.fill(consistent, 0);
+            count = 0;
+            return false;
+        }
+
+        int remaining = 0;
+        for (int word = 0; word < consistent.length; word++) {
+            long bits = consistent[word];
+            for (long rest = bits; rest != 0; rest &= rest - 1) {
+                int code = word * 64 + Long.numberOfTrailingZeros(rest);
+                if (space.score(guess, code) != score)
+                    bits &= ~Long.lowestOneBit(rest);
+            }
+            consistent[word] = bits;
+            remaining += Long.bitCount(bits);
+        }
+        count = remaining;
+        return count > 0;
+    }
+
+    /**
+     * @return whether some code is consistent with all feedback
+     */
+    public boolean isConsistent() {
+        return count > 0;
+    }
+
+    /**
+     * @param code a code
+     * @return whether the code is consistent with all feedback
+     */
+    public boolean isPossible(int code) {
+        return (consistent[code >>> 6] & (1L << code)) != 0;
+    }
+
+    /**
+     * @return the number of codes that are consistent with all feedback
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public CodeSpace getSpace() {
+        return space;
+    }
+
+}
@@ -0,0 +1,148 @@
+package mastermind.solver;
+
+import java.util.Arrays;
+
+/**
+ * Plays MasterMind using the minimax strategy by Knuth.
+ *
+ * The solver keeps the codes that are consistent with all feedback received so far. Every guess is chosen to minimize
+ * the largest number of codes that could remain consistent after its feedback, preferring guesses that could be the
+ * secret code themselves. For standard mode, this solves every game in at most five guesses.
+ *
+ * When scoring every code against every remaining candidate would be too expensive (challenge mode, early in the
+ * game), only the candidates themselves are considered as guesses, or an evenly spread sample of them if there are too
+ * many. As the strategy is deterministic, the guesses are remembered by the feedback that led to them, so that later
+ * games in the same JVM take no time to compute them.
+ */
+public final class Solver {
+
+    private static final long POOL_LIMIT = 4000000; // Scores computed for a single guess at most
+
+    private final CodeSpace space;
+    private final int[] candidates;
+    private final int[] partition;
+    private final StringBuilder history = new StringBuilder();
+    private int count;
+
+    /**
+     * @param space codes of the game
+     */
+    public Solver(CodeSpace space) {
+        this.space = space;
+        candidates = new int[space.size()];
+        for (int code = 0; code < candidates.length; code++)
+            candidates[code] = code;
+        count = candidates.length;
+        partition = new int[space.scoreCount()];
+    }
+
+    /**
+     * Chooses the next guess.
+     *
+     * @return the guess
+     * @throws IllegalStateException if no code is consistent with the feedback received
+     */
+    public int nextGuess() {
+        if (count == 0)
+            throw new IllegalStateException("No code is consistent with the feedback");
+        if (history.length() == 0)
+            return opening();
+        if (count <= 2)
+            return candidates[0];
+
+        String key = history.toString();
+        Integer guess = space.guesses.get(key);
+        if (guess == null) {
+            guess = chooseGuess();
+            space.guesses.put(key, guess);
+        }
+        return guess;
+    }
+
+    private int chooseGuess() {
+        boolean all = (long) space.size() * count <= POOL_LIMIT;
+        int best = -1, bestWorst = Integer.MAX_VALUE;
+
+        // Consistent guesses first, so they win ties
+        long stride = Math.max(1, (long) count * count / POOL_LIMIT);
+        for (int i = 0; i < count; i += stride) {
+            int worst = worstCase(candidates[i]);
+            if (worst < bestWorst) {
+                best = candidates[i];
+                bestWorst = worst;
+            }
+        }
+        if (all) {
+            for (int guess = 0; guess < space.size(); guess++) {
+                int worst = worstCase(guess);
+                if (worst < bestWorst) {
+                    best = guess;
+                    bestWorst = worst;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Knuth's opening for standard mode (two pegs of one color, two of another), generalized to any number of holes.
+     */
+    private int opening() {
+        int[] colors = new int[space.getHoles()];
+        for (int hole = space.getHoles() / 2; hole < colors.length; hole++)
+            colors[hole] = Math.min(1, space.getColors() - 1);
+        return space.encode(colors);
+    }
+
+    private int worstCase(int guess) {
+        Arrays.fill(partition, 0);
+        int worst = 0;
+        for (int i = 0; i < count; i++) {
+            int size = ++partition[space.score(guess, candidates[i])];
+            if (size > worst)
+                worst = size;
+        }
+        return worst;
+    }
+
+    /**
+     * Removes the codes that are inconsistent with the feedback on a guess.
+     *
+     * @param guess the guess, which need not have been proposed by this solver
+     * @param exact number of pegs with the right color in the right hole
+     * @param partial number of pegs with the right color in the wrong hole
+     */
+    public void addFeedback(int guess, int exact, int partial) {
+        addFeedback(guess, space.encodeScore(exact, partial));
+    }
+
+    /**
+     * Removes the codes that are inconsistent with the feedback on a guess.
+     *
+     * @param guess the guess, which need not have been proposed by this solver
+     * @param score the encoded score
+     */
+    public void addFeedback(int guess, int score) {
+        history.append(guess).append(':').append(score).append(' ');
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (space.score(guess, candidates[i]) == score)
+                candidates[kept++] = candidates[i];
+        }
+        count = kept;
+    }
+
+    /**
+     * @return the number of codes that are consistent with all feedback received
+     */
+    public int getCandidateCount() {
+        return count;
+    }
+
+    public CodeSpace getSpace() {
+        return space;
+    }
+
+}
@@ -0,0 +1,272 @@
+package mastermind.stdio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-memory pipe between two threads, which can be reset and reused once both ends are done with it.
+ *
+ * Unlike {@link java.io.PipedInputStream}, a reader never polls: it waits until data is written or the writing end is
+ * closed. The pipe also records whether its reader is blocked on an empty pipe; a program that is blocked reading its
+ * stdin has flushed all of its output, so whoever drives the program can stop waiting for output as soon as
+ * {@link #isAwaitingInput()} holds.
+ *
+ * The pipe is guarded by a lock rather than a monitor, so that blocked virtual threads do not pin their carrier. The
+ * stdin and stdout pipes of a program can share a lock, which lets its driver wait for activity on either of them.
+ */
+public class Pipe {
+
+    private final ReentrantLock lock;
+    private final Condition changed;
+    private final byte[] buffer;
+    private final Source source = new Source();
+    private final Sink sink = new Sink();
+
+    private int head, count;
+    private boolean sourceClosed, sinkClosed;
+    private boolean blocked;
+
+    /**
+     * @param size size of the pipe buffer
+     */
+    public Pipe(int size) {
+        lock = new ReentrantLock();
+        changed = lock.newCondition();
+        buffer = new byte[size];
+    }
+
+    /**
+     * Creates a pipe that shares its lock with another pipe.
+     *
+     * @param size size of the pipe buffer
+     * @param sibling the pipe whose lock is shared
+     */
+    public Pipe(int size, Pipe sibling) {
+        lock = sibling.lock;
+        changed = sibling.changed;
+        buffer = new byte[size];
+    }
+
+    /**
+     * @return the end to which data is written
+     */
+    public OutputStream getSource() {
+        return source;
+    }
+
+    /**
+     * @return the end from which data is read
+     */
+    public InputStream getSink() {
+        return sink;
+    }
+
+    /**
+     * Discards all data and reopens both ends. Must only be called when neither end is used any longer.
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            head = 0;
+            count = 0;
+            sourceClosed = false;
+            sinkClosed = false;
+            blocked = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether the reader is blocked on this pipe while no data is available
+     */
+    public boolean isAwaitingInput() {
+        lock.lock();
+        try {
+            return blocked && count == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the reader of this pipe blocks waiting for input, data can be read from the given pipe, or either
+     * pipe is closed.
+     *
+     * @param output a pipe that shares its lock with this one
+     * @param timeout maximum time to wait, in milliseconds
+     * @return whether the reader is awaiting input
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitInput(Pipe output, long timeout) throws InterruptedException {
+        if (output.lock != lock)
+            throw new IllegalArgumentException("Pipes do not share a lock");
+
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (!(blocked && count == 0) && output.count == 0 && !isClosed() && !output.isClosed() && remaining > 0)
+                remaining = changed.awaitNanos(remaining);
+
+            return blocked && count == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isClosed() {
+        return sourceClosed || sinkClosed;
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            while (len > 0) {
+                if (isClosed())
+                    throw new IOException("Pipe closed");
+
+                if (count == buffer.length) {
+                    await(); // Until the reader has made room
+                    continue;
+                }
+
+                int tail = (head + count) % buffer.length;
+                int n = Math.min(len, Math.min(buffer.length - count, buffer.length - tail));
+                System.arraycopy(b, off, buffer, tail, n);
+                count += n;
+                off += n;
+                len -= n;
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        lock.lock();
+        try {
+            while (count == 0) {
+                if (sinkClosed)
+                    throw new IOException("Pipe closed");
+                if (sourceClosed)
+                    return -1;
+
+                blocked = true;
+                changed.signalAll();
+                try {
+                    await();
+                } finally {
+                    blocked = false;
+                }
+            }
+
+            int n = Math.min(len, Math.min(count, buffer.length - head));
+            System.arraycopy(buffer, head, b, off, n);
+            head = (head + n) % buffer.length;
+            count -= n;
+            changed.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int available() throws IOException {
+        lock.lock();
+        try {
+            if (sinkClosed)
+                throw new IOException("Pipe closed");
+
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the writing end; the reader reaches the end of the stream once all data has been read.
+     */
+    public void closeSource() {
+        lock.lock();
+        try {
+            sourceClosed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the reading end; further writes fail.
+     */
+    public void closeSink() {
+        lock.lock();
+        try {
+            sinkClosed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            changed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private final class Source extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            Pipe.this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Pipe.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closeSource();
+        }
+    }
+
+    private final class Sink extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return Pipe.this.read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return Pipe.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Pipe.this.available();
+        }
+
+        @Override
+        public void close() {
+            closeSink();
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+package mastermind.stdio;
+
+import java.io.*;
+import java.util.Locale;
+
+/**
+ * Routes the standard streams on a per-thread basis.
+ *
+ * Once installed, {@link System#out} and {@link System#in} are replaced by routing streams. A thread that has been
+ * bound to a pair of streams (and every thread it starts afterwards) will use those streams, while all other threads
+ * keep using the actual stdout and stdin. This allows several programs that rely on the standard streams to run
+ * concurrently within a single JVM.
+ */
+public final class StdioRouter {
+
+    private static final InheritableThreadLocal<Binding> binding = new InheritableThreadLocal<>();
+
+    private static PrintStream realOut;
+    private static InputStream realIn;
+
+    private StdioRouter() {
+    }
+
+    /**
+     * Replaces the standard streams by routing streams. Calling this method more than once has no effect.
+     */
+    public static synchronized void install() {
+        if (realOut != null)
+            return;
+
+        realOut = System.out;
+        realIn = System.in;
+        System.setOut(new RoutingPrintStream());
+        System.setIn(new RoutingInputStream());
+    }
+
+    /**
+     * Binds the current thread (and the threads it will start) to the given streams.
+     *
+     * @param out stream used as stdout
+     * @param in stream used as stdin
+     */
+    public static void bind(PrintStream out, InputStream in) {
+        binding.set(new Binding(out, in));
+    }
+
+    /**
+     * Restores the actual standard streams for the current thread.
+     */
+    public static void unbind() {
+        binding.remove();
+    }
+
+    /**
+     * Returns the binding of the current thread, so that it can be restored after binding the thread to other streams
+     * for a while.
+     *
+     * @return the binding, or {@code null} if the thread uses the actual standard streams
+     */
+    public static Binding getBinding() {
+        return binding.get();
+    }
+
+    /**
+     * Restores a binding of the current thread.
+     *
+     * @param previous binding returned by {@link #getBinding()}; {@code null} to restore the actual standard streams
+     */
+    public static void restore(Binding previous) {
+        if (previous == null)
+            binding.remove();
+        else
+            binding.set(previous);
+    }
+
+    /**
+     * Access to the actual stdout.
+     *
+     * @return the stdout as it was before installing the router
+     */
+    public static synchronized PrintStream getRealOut() {
+        return realOut != null ? realOut : System.out;
+    }
+
+    /**
+     * Access to the actual stdin.
+     *
+     * @return the stdin as it was before installing the router
+     */
+    public static synchronized InputStream getRealIn() {
+        return realIn != null ? realIn : System.in;
+    }
+
+    private static PrintStream out() {
+        Binding current = binding.get();
+        return current != null ? current.out : realOut;
+    }
+
+    private static InputStream in() {
+        Binding current = binding.get();
+        return current != null ? current.in : realIn;
+    }
+
+    /**
+     * The streams a thread is bound to.
+     */
+    public static final class Binding {
+        private final PrintStream out;
+        private final InputStream in;
+
+        private Binding(PrintStream out, InputStream in) {
+            this.out = out;
+            this.in = in;
+        }
+    }
+
+    /**
+     * Delegates every operation to the stdout of the current thread, so that no lock is shared between threads.
+     */
+    private static final class RoutingPrintStream extends PrintStream {
+
+        private RoutingPrintStream() {
+            super(new ByteArrayOutputStream(0), true);
+        }
+
+        @Override public void flush()                                   { out().flush(); }
+        @Override public void close()                                   { out().close(); }
+        @Override public boolean checkError()                           { return out().checkError(); }
+        @Override public void write(int b)                              { out().write(b); }
+        @Override public void write(byte[] buf, int off, int len)       { out().write(buf, off, len); }
+        @Override public void print(boolean b)                          { out().print(b); }
+        @Override public void print(char c)                             { out().print(c); }
+        @Override public void print(int i)                              { out().print(i); }
+        @Override public void print(long l)                             { out().print(l); }
+        @Override public void print(float f)                            { out().print(f); }
+        @Override public void print(double d)                           { out().print(d); }
+        @Override public void print(char[] s)                           { out().print(s); }
+        @Override public void print(String s)                           { out().print(s); }
+        @Override public void print(Object obj)                         { out().print(obj); }
+        @Override public void println()                                 { out().println(); }
+        @Override public void println(boolean x)                        { out().println(x); }
+        @Override public void println(char x)                           { out().println(x); }
+        @Override public void println(int x)                            { out().println(x); }
+        @Override public void println(long x)                           { out().println(x); }
+        @Override public void println(float x)                          { out().println(x); }
+        @Override public void println(double x)                         { out().println(x); }
+        @Override public void println(char[] x)                         { out().println(x); }
+        @Override public void println(String x)                         { out().println(x); }
+        @Override public void println(Object x)                         { out().println(x); }
+        @Override public PrintStream printf(String format, Object... args)           { return out().printf(format, args); }
+        @Override public PrintStream printf(Locale l, String format, Object... args) { return out().printf(l, format, args); }
+        @Override public PrintStream format(String format, Object... args)           { return out().format(format, args); }
+        @Override public PrintStream format(Locale l, String format, Object... args) { return out().format(l, format, args); }
+        @Override public PrintStream append(CharSequence csq)                        { return out().append(csq); }
+        @Override public PrintStream append(CharSequence csq, int start, int end)    { return out().append(csq, start, end); }
+        @Override public PrintStream append(char c)                                  { return out().append(c); }
+    }
+
+    private static final class RoutingInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            return in().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return in().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in().available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in().close();
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package mastermind.trace;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a trace written by {@link TraceWriter}.
+ *
+ * When several traces have been appended to the same file, the session ids of later traces are renumbered to follow
+ * those of earlier ones.
+ */
+public final class TraceReader implements Closeable {
+
+    private final DataInputStream stream;
+    private int offset, maxSession;
+
+    /**
+     * @param file trace file
+     * @throws IOException if the file cannot be opened or is not a trace
+     */
+    public TraceReader(File file) throws IOException {
+        stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        readHeader();
+    }
+
+    private void readHeader() throws IOException {
+        if (stream.readInt() != TraceWriter.MAGIC)
+            throw new IOException("Not a trace");
+        int version = stream.readUnsignedByte();
+        if (version != TraceWriter.VERSION)
+            throw new IOException("Unsupported trace version " + version);
+
+        offset = maxSession;
+    }
+
+    /**
+     * @return the next record, or {@code null} at the end of the file
+     * @throws IOException if the trace is corrupt
+     */
+    public Record next() throws IOException {
+        int type = stream.read();
+        if (type == -1)
+            return null;
+        if (type == TraceWriter.MAGIC >>> 24) { // The header of an appended trace
+            stream.skipBytes(3);
+            stream.readUnsignedByte();
+            offset = maxSession;
+            return next();
+        }
+
+        int session = offset + (int) readNumber();
+        maxSession = Math.max(maxSession, session);
+        long time = readNumber();
+        switch (type) {
+            case TraceWriter.START:
+                String name = readString();
+                return new Record(type, session, time, name, stream.readLong(), null);
+            case TraceWriter.INPUT:
+                return new Record(type, session, time, readString(), 0, null);
+            case TraceWriter.OUTPUT:
+                String[] lines = new String[(int) readNumber()];
+                for (int i = 0; i < lines.length; i++)
+                    lines[i] = readString();
+                return new Record(type, session, time, null, 0, lines);
+            case TraceWriter.END:
+                return new Record(type, session, time, null, 0, null);
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+     * Reads all records of the trace, grouped by session in the order the sessions have started.
+     *
+     * @param file trace file
+     * @return the records of every session by session id
+     * @throws IOException if the trace cannot be read
+     */
+    public static Map<Integer, List<Record>> readSessions(File file) throws IOException {
+        Map<Integer, List<Record>> sessions = new LinkedHashMap<>();
+        try (TraceReader reader = new TraceReader(file)) {
+            Record record;
+            while ((record = reader.next()) != null) {
+                List<Record> records = sessions.get(record.getSession());
+                if (records == null) {
+                    records = new ArrayList<>();
+                    sessions.put(record.getSession(), records);
+                }
+                records.add(record);
+            }
+        } catch (EOFException e) {
+            // The trace was cut off, e.g. because the JVM was killed; use what is complete
+        }
+
+        return sessions;
+    }
+
+    private long readNumber() throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = stream.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[(int) readNumber()];
+        stream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    /**
+     * A single record of a trace.
+     */
+    public static final class Record {
+        private final int type;
+        private final int session;
+        private final long time;
+        private final String text;
+        private final long seed;
+        private final String[] lines;
+
+        private Record(int type, int session, long time, String text, long seed, String[] lines) {
+            this.type = type;
+            this.session = session;
+            this.time = time;
+            this.text = text;
+            this.seed = seed;
+            this.lines = lines;
+        }
+
+        public boolean isStart() {
+            return type == TraceWriter.START;
+        }
+
+        public boolean isInput() {
+            return type == TraceWriter.INPUT;
+        }
+
+        public boolean isOutput() {
+            return type == TraceWriter.OUTPUT;
+        }
+
+        public boolean isEnd() {
+            return type == TraceWriter.END;
+        }
+
+        public int getSession() {
+            return session;
+        }
+
+        /**
+         * @return microseconds since the trace was opened
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return the session name of a start record, or the line of an input record
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return the seed of a start record
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * @return the lines of an output record
+         */
+        public String[] getLines() {
+            return lines;
+        }
+    }
+
+}
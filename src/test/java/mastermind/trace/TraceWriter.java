@@ -0,0 +1,232 @@
+package mastermind.trace;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a compact, append-only binary trace of the input and output of sessions.
+ *
+ * Recording a record only queues it; a background thread encodes and writes the records, and flushes whenever the
+ * queue runs empty. The file starts with {@link #MAGIC} and {@link #VERSION}, followed by records that each consist of
+ * a type byte, the session id and a timestamp (microseconds since the trace was opened) as variable-length numbers,
+ * and a payload:
+ * <ul>
+ * <li>{@link #START}: session name and seed</li>
+ * <li>{@link #INPUT}: the line of input</li>
+ * <li>{@link #OUTPUT}: the number of output lines, followed by the lines</li>
+ * <li>{@link #END}: nothing</li>
+ * </ul>
+ * Strings are written as their length in UTF-8 bytes followed by the bytes. Several traces can be appended to the same
+ * file; each starts with its own header.
+ */
+public final class TraceWriter implements Closeable {
+
+    static final int MAGIC = 0x4D4D5452; // "MMTR"
+    static final int VERSION = 1;
+
+    static final int START = 1, INPUT = 2, OUTPUT = 3, END = 4;
+
+    private static final String FILE = System.getProperty("blackbox.trace");
+
+    private static TraceWriter shared;
+    private static boolean sharedOpened;
+
+    private final DataOutputStream stream;
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final long origin = System.nanoTime();
+    private volatile boolean closed;
+    private IOException failure;
+
+    /**
+     * Opens a trace; if the file exists, the trace is appended to it.
+     *
+     * @param file trace file
+     * @throws IOException if the file cannot be opened
+     */
+    public TraceWriter(File file) throws IOException {
+        stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16));
+        stream.writeInt(MAGIC);
+        stream.writeByte(VERSION);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeRecords();
+            }
+        }, "trace-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the trace shared by all harnesses, configured by {@code -Dblackbox.trace=<file>}, or {@code null} if
+     *         tracing is disabled; it is closed when the JVM exits
+     */
+    public static synchronized TraceWriter getShared() {
+        if (!sharedOpened) {
+            sharedOpened = true;
+            if (FILE != null) {
+                try {
+                    shared = new TraceWriter(new File(FILE));
+                    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            shared.close();
+                        }
+                    }));
+                } catch (IOException e) {
+                    System.err.println("Unable to open trace " + FILE + ": " + e.getMessage());
+                }
+            }
+        }
+
+        return shared;
+    }
+
+    /**
+     * Records the start of a session.
+     *
+     * @param name name of the harness
+     * @param seed seed of the harness's random choices
+     * @return the id of the session within this trace
+     */
+    public int startSession(String name, long seed) {
+        int session = sessions.incrementAndGet();
+        queue.add(new Record(START, session, now(), name, seed, null));
+        return session;
+    }
+
+    /**
+     * Records a line of input.
+     *
+     * @param session session id
+     * @param line line of input
+     */
+    public void input(int session, String line) {
+        queue.add(new Record(INPUT, session, now(), line, 0, null));
+    }
+
+    /**
+     * Records the output read at once.
+     *
+     * @param session session id
+     * @param lines output lines
+     */
+    public void output(int session, String[] lines) {
+        queue.add(new Record(OUTPUT, session, now(), null, 0, lines));
+    }
+
+    /**
+     * Records the end of a session.
+     *
+     * @param session session id
+     */
+    public void endSession(int session) {
+        queue.add(new Record(END, session, now(), null, 0, null));
+    }
+
+    private long now() {
+        return (System.nanoTime() - origin) / 1000;
+    }
+
+    private void writeRecords() {
+        try {
+            while (true) {
+                Record record = queue.poll();
+                if (record == null) {
+                    stream.flush(); // Keep the file complete while the harness is idle
+                    record = queue.take();
+                }
+                if (record.type == 0)
+                    break;
+
+                write(record);
+            }
+            stream.flush();
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException ignored) {
+
+        }
+    }
+
+    private void write(Record record) throws IOException {
+        stream.writeByte(record.type);
+        writeNumber(record.session);
+        writeNumber(record.time);
+        switch (record.type) {
+            case START:
+                writeString(record.text);
+                stream.writeLong(record.seed);
+                break;
+            case INPUT:
+                writeString(record.text);
+                break;
+            case OUTPUT:
+                writeNumber(record.lines.length);
+                for (String line : record.lines)
+                    writeString(line);
+                break;
+        }
+    }
+
+    private void writeNumber(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            stream.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        stream.writeByte((int) value);
+    }
+
+    private void writeString(String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeNumber(bytes.length);
+        stream.write(bytes);
+    }
+
+    /**
+     * Writes all queued records and closes the file. Records added afterwards are ignored.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+
+        queue.add(new Record(0, 0, 0, null, 0, null));
+        try {
+            thread.join();
+            stream.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+        }
+        if (failure != null)
+            System.err.println("Unable to write trace: " + failure.getMessage());
+    }
+
+    private static final class Record {
+        private final int type;
+        private final int session;
+        private final long time;
+        private final String text;
+        private final long seed;
+        private final String[] lines;
+
+        private Record(int type, int session, long time, String text, long seed, String[] lines) {
+            this.type = type;
+            this.session = session;
+            this.time = time;
+            this.text = text;
+            this.seed = seed;
+            this.lines = lines;
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+import org.scalatest.FlatSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import mastermind.solver.CodeSpace
+
+/**
+ * Checks MMAnswer on a sample of its random answers for every mode.
+ *
+ * The answers are drawn in parallel; every draw captures the output of its own thread only, so the workers do not
+ * interfere.
+ */
+class MMAnswerSpec extends FlatSpec with ShouldMatchers {
+
+  import Util._
+
+  private val Samples = 20000               // Answers drawn per mode
+
+  behavior of "MMAnswer"
+
+  for (mode <- Modes) {
+    it should "only give answers of valid pegs and reach every peg in every hole in " + Samples +
+      " sampled answers in mode " + mode in {
+      val holes = CodeSpace.of(mode - 2, mode).getHoles
+      val answers = (1 to Samples).par.map(_ => discardOutput(new MMAnswer(mode).getAnswer)).seq
+
+      val invalid = answers.filter(a => a.length != holes || a.exists(peg => !Pegs.take(mode).contains(peg)))
+      withClue(report(invalid.map(_.mkString))) {
+        invalid should be ('empty)
+      }
+
+      val reached = answers.flatMap(_.zipWithIndex).toSet
+      val missed = for (hole <- 0 until holes; peg <- Pegs.take(mode) if !reached((peg, hole)))
+        yield "peg " + peg + " never in hole " + (hole + 1)
+      withClue(report(missed)) {
+        missed should be ('empty)
+      }
+    }
+  }
+
+}
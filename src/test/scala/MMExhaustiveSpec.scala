@@ -0,0 +1,63 @@
+import org.scalatest.FlatSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import mastermind.solver.CodeSpace
+
+/**
+ * Checks MMHint against every answer of every mode and every number of hints used. MMAnswer, which draws its answers
+ * at random, is checked on a sample in MMAnswerSpec.
+ *
+ * The answers are checked in parallel (the parallel collections run on a fork-join pool with one worker per core);
+ * every check captures the output of its own thread only, so the workers do not interfere.
+ */
+class MMExhaustiveSpec extends FlatSpec with ShouldMatchers {
+
+  import Util._
+
+  private val HintPattern = "^Hint: There is at least one ([roygbiv]) peg.$".r
+  private val NoMoreHints = "Hint: Sorry, you have already used all of your hints."
+
+  private def space(mode: Int) = CodeSpace.of(mode - 2, mode)
+
+  private def answer(space: CodeSpace, code: Int) =
+    Array.tabulate(space.getHoles)(hole => Pegs(space.color(code, hole)))
+
+  /** Checks every number of hints used for one answer, returning a description of every failure. */
+  private def checkHints(answer: Array[Char]): Seq[String] =
+    for {
+      hintsUsed <- 0 to answer.length
+      failure <- checkHint(answer, hintsUsed)
+    } yield answer.mkString + ", " + hintsUsed + " hints used: " + failure
+
+  private def checkHint(answer: Array[Char], hintsUsed: Int): Option[String] = {
+    val (output, returned) = catchOutputAndResult(new MMHint(answer.clone, hintsUsed).getHint)
+    val line = output.lines.toSeq.headOption.getOrElse("")
+
+    if (hintsUsed < answer.length) {
+      line match {
+        case HintPattern(peg) if !answer.contains(peg.head) => Some("hint for absent peg: " + line)
+        case HintPattern(_) if returned != hintsUsed + 1    => Some("returned " + returned)
+        case HintPattern(_)                                 => None
+        case _                                              => Some("no hint: " + line)
+      }
+    } else {
+      if (line != NoMoreHints) Some("hint after all were used: " + line)
+      else if (returned != hintsUsed) Some("returned " + returned)
+      else None
+    }
+  }
+
+  behavior of "MMHint"
+
+  for (mode <- Modes) {
+    it should "give valid hints for every answer and number of hints used in mode " + mode in {
+      val codes = space(mode)
+      val failures = (0 until codes.size).par.flatMap(code => checkHints(answer(codes, code))).seq
+
+      withClue(report(failures)) {
+        failures should be ('empty)
+      }
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+import java.io.{BufferedReader, InputStreamReader}
+
+import org.scalatest.FlatSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import mastermind.session.SessionEngine
+
+class SessionEngineSpec extends FlatSpec with ShouldMatchers {
+
+  private def program(f: => Unit) = new SessionEngine.Program {
+    def run() { f }
+  }
+
+  behavior of "SessionEngine"
+
+  it should "not time out reads of a session whose program waits for a free thread" in {
+    val engine = new SessionEngine(1, 8192, 60000, false)
+    try {
+      val first = engine.start(program {
+        System.out.println("first: " + new BufferedReader(new InputStreamReader(System.in)).readLine())
+      })
+      val second = engine.start(program {
+        System.out.println("second")
+      })
+
+      // The first program holds the only thread until it has read its input, well after the timeout of the read below
+      new Thread {
+        override def run() {
+          Thread.sleep(300)
+          first.writeLine("go")
+        }
+      }.start()
+
+      second.readLines(100).toSeq should equal (Seq("second"))
+      second.isTerminated should be (true)
+      first.readLines(100).toSeq should equal (Seq("first: go"))
+    } finally {
+      engine.shutdown()
+    }
+  }
+
+  it should "not wait for a queued program once its session is closed" in {
+    val engine = new SessionEngine(1, 8192, 60000, false)
+    try {
+      engine.start(program {
+        Thread.sleep(60000)
+      })
+      val queued = engine.start(program {
+        System.out.println("queued")
+      })
+
+      queued.close()
+      queued.readLines(100) should be ('empty)
+    } finally {
+      engine.shutdown()
+    }
+  }
+
+}
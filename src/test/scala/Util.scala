@@ -1,32 +1,39 @@
 import java.io.{PrintStream, ByteArrayOutputStream}
 
+import mastermind.stdio.StdioRouter
+
 object Util {
 
-  def discardOutput[T](f: => T): T = {
-    val buffer = new ByteArrayOutputStream()
-    val stream = new PrintStream(buffer)
-    val oldOut = System.out
+  StdioRouter.install()
+
+  /**
+   * Runs f with the stdout of the current thread (only) redirected to the given stream. Afterwards the previous binding
+   * of the thread is restored, so captures can be nested and used by threads that are bound themselves.
+   */
+  private def withOutput[T](stream: PrintStream)(f: => T): T = {
+    val previous = StdioRouter.getBinding
+    StdioRouter.bind(stream, StdioRouter.getRealIn)
     try {
-      System.setOut(stream)
       f
     } finally {
-      System.setOut(oldOut)
+      stream.flush()
+      StdioRouter.restore(previous)
     }
   }
 
-  def catchOutput(f: => Unit): String = {
+  def discardOutput[T](f: => T): T = {
     val buffer = new ByteArrayOutputStream()
-    val stream = new PrintStream(buffer)
-    val oldOut = System.out
-    try {
-      System.setOut(stream)
-      f
-      buffer.toString
-    } finally {
-      System.setOut(oldOut)
-    }
+    withOutput(new PrintStream(buffer))(f)
+  }
+
+  def catchOutputAndResult[T](f: => T): (String, T) = {
+    val buffer = new ByteArrayOutputStream()
+    val result = withOutput(new PrintStream(buffer))(f)
+    (buffer.toString, result)
   }
 
+  def catchOutput(f: => Unit): String = catchOutputAndResult(f)._1
+
   def catchOutputLines(f: => Unit): Seq[String] = catchOutput(f).lines.toSeq
 
   def catchOutputLine(f: => Unit): String = catchOutputLines(f).head
@@ -35,4 +42,12 @@ object Util {
     for (i <- 1 to n) f
   }
 
+  val Pegs  = "roygbiv"
+  val Modes = Seq(6, 7)                     // Number of colors; there are two pegs fewer than colors
+  val Shown = 10                            // Failures reported at most
+
+  /** Lists the first failures, followed by how many more there are. */
+  def report(failures: Seq[String]): String =
+    failures.take(Shown).mkString("\n") + (if (failures.size > Shown) "\n... " + (failures.size - Shown) + " more" else "")
+
 }